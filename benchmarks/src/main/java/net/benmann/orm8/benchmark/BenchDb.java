@@ -0,0 +1,120 @@
+package net.benmann.orm8.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.benmann.orm8.db.AbstractSingleTableRecord;
+import net.benmann.orm8.db.AbstractTable;
+import net.benmann.orm8.db.Column;
+import net.benmann.orm8.db.Column.BooleanColumn;
+import net.benmann.orm8.db.Column.DoubleColumn;
+import net.benmann.orm8.db.Column.IntegerColumn;
+import net.benmann.orm8.db.Column.LongColumn;
+import net.benmann.orm8.db.Column.StringColumn;
+import net.benmann.orm8.db.DbConnection;
+import net.benmann.orm8.db.KeyType;
+
+/**
+ * The schema shared by the benchmarks: items, and parts which belong to an item.
+ */
+public class BenchDb extends DbConnection<BenchDb> {
+    /** Where the db lives; each benchmark is run against both. */
+    public enum Store {
+        MEMORY, FILE
+    }
+
+    public final ItemTable items = new ItemTable(this);
+    public final PartTable parts = new PartTable(this);
+    private File file;
+
+    /** Use open */
+    private BenchDb() {
+    }
+
+    public static BenchDb open(Store store) throws IOException {
+        if (store == Store.MEMORY)
+            return DbConnection.create("jdbc:sqlite::memory:", () -> new BenchDb());
+
+        File file = File.createTempFile("orm8-bench", ".db");
+        file.delete();
+        BenchDb db = DbConnection.create("jdbc:sqlite:" + file.getAbsolutePath(), () -> new BenchDb());
+        db.file = file;
+        return db;
+    }
+
+    /** Close the db, deleting it if it's a temp file */
+    @Override public void close() throws SQLException {
+        super.close();
+        if (file != null)
+            file.delete();
+    }
+
+    /** Insert count items, each with partsPerItem parts, indexing the parts by item */
+    public void populate(int count, int partsPerItem) {
+        List<Item> newItems = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            newItems.add(items.create().fill(i));
+        }
+        items.insertAll(newItems);
+
+        List<Part> newParts = new ArrayList<>();
+        for (Item item : items.all().select()) {
+            for (int i = 0; i < partsPerItem; i++) {
+                Part part = parts.create();
+                part.item.set(item.id.get());
+                part.label.set("part " + i);
+                newParts.add(part);
+            }
+        }
+        parts.insertAll(newParts);
+        exec("CREATE INDEX IF NOT EXISTS parts_item ON parts (" + Column.COLUMN_PREFIX + "item)");
+    }
+
+    public static class ItemTable extends AbstractTable<ItemTable, Item, BenchDb> {
+        public ItemTable(BenchDb db) {
+            super(db, "items", Item::new);
+        }
+    }
+
+    public static class Item extends AbstractSingleTableRecord<Item> {
+        private Item(ItemTable table) {
+            super(table);
+        }
+
+        public IntegerColumn id = fields.integerColumn("id", KeyType.AUTOINCREMENT);
+        public StringColumn name = fields.stringColumn("name");
+        public DoubleColumn price = fields.doubleColumn("price");
+        public LongColumn quantity = fields.longColumn("quantity");
+        public BooleanColumn active = fields.booleanColumn("active");
+        public StringColumn notes = fields.stringColumn("notes", KeyType.NULLABLE);
+
+        /** Set every column but the key from n */
+        public Item fill(int n) {
+            name.set("item " + n);
+            price.set(n * 1.25);
+            quantity.set((long) n * 1000);
+            active.set(n % 2 == 0);
+            notes.set(n % 3 == 0 ? null : "notes for item " + n);
+            return this;
+        }
+    }
+
+    public static class PartTable extends AbstractTable<PartTable, Part, BenchDb> {
+        public PartTable(BenchDb db) {
+            super(db, "parts", Part::new);
+        }
+    }
+
+    public static class Part extends AbstractSingleTableRecord<Part> {
+        private Part(PartTable table) {
+            super(table);
+        }
+
+        public IntegerColumn id = fields.integerColumn("id", KeyType.AUTOINCREMENT);
+        public IntegerColumn item = fields.integerColumn("item");
+        public StringColumn label = fields.stringColumn("label");
+    }
+}
@@ -0,0 +1,102 @@
+package net.benmann.orm8.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.benmann.orm8.db.ColumnType;
+
+/**
+ * ColumnType.set, binding a value of each built-in type to a prepared statement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingBenchmark {
+    @Param({ "INTEGER", "LONG", "DOUBLE", "BOOLEAN", "STRING", "UUID", "DATE", "DOUBLE_ARRAY" })
+    String type;
+
+    Connection connection;
+    PreparedStatement ps;
+    ColumnType<Object> columnType;
+    Object value;
+
+    @SuppressWarnings("unchecked")
+    @Setup public void prepare() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        ps = connection.prepareStatement("SELECT ?");
+
+        ColumnType<?> ct;
+        switch (type) {
+        case "INTEGER":
+            ct = ColumnType.INTEGER;
+            value = 123456;
+            break;
+        case "LONG":
+            ct = ColumnType.LONG;
+            value = 1234567890123L;
+            break;
+        case "DOUBLE":
+            ct = ColumnType.DOUBLE;
+            value = 1234.5678;
+            break;
+        case "BOOLEAN":
+            ct = ColumnType.BOOLEAN;
+            value = true;
+            break;
+        case "STRING":
+            ct = ColumnType.STRING;
+            value = "a short string value";
+            break;
+        case "UUID":
+            ct = ColumnType.UUID;
+            value = UUID.randomUUID();
+            break;
+        case "DATE":
+            ct = ColumnType.DATE;
+            value = new Date();
+            break;
+        case "DOUBLE_ARRAY":
+            ct = ColumnType.DOUBLE_ARRAY;
+            double[] array = new double[16];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = i * 0.5;
+            }
+            value = array;
+            break;
+        default:
+            throw new IllegalArgumentException(type);
+        }
+        columnType = (ColumnType<Object>) ct;
+    }
+
+    @TearDown public void close() throws SQLException {
+        ps.close();
+        connection.close();
+    }
+
+    @Benchmark public PreparedStatement bind() throws SQLException {
+        columnType.set(ps, 1, value);
+        return ps;
+    }
+}
@@ -0,0 +1,79 @@
+package net.benmann.orm8.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.benmann.orm8.benchmark.BenchDb.Item;
+import net.benmann.orm8.benchmark.BenchDb.Store;
+import net.benmann.orm8.db.WriteQueue;
+
+/**
+ * record.insert() one row at a time (each in its own implicit transaction), insertAll in batches, and inserts
+ * through a WriteQueue, which commits them in groups. Scores are per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsertBenchmark {
+    static final int BATCH = 100;
+
+    @Param({ "MEMORY", "FILE" })
+    Store store;
+
+    BenchDb db;
+    WriteQueue writes;
+    int n = 0;
+
+    @Setup(Level.Iteration) public void open() throws Exception {
+        db = BenchDb.open(store);
+        writes = db.writeQueue(BATCH, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown(Level.Iteration) public void close() throws Exception {
+        writes.close();
+        db.close();
+    }
+
+    @Benchmark public Item insert() {
+        Item item = db.items.create().fill(n++);
+        item.insert();
+        return item;
+    }
+
+    @Benchmark @OperationsPerInvocation(BATCH) public List<Item> insertAll() {
+        List<Item> items = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            items.add(db.items.create().fill(n++));
+        }
+        db.items.insertAll(items);
+        return items;
+    }
+
+    @Benchmark @OperationsPerInvocation(BATCH) public void insertQueued() {
+        CompletableFuture<?>[] inserts = new CompletableFuture<?>[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            inserts[i] = writes.insert(db.items.create().fill(n++));
+        }
+        CompletableFuture.allOf(inserts).join();
+    }
+}
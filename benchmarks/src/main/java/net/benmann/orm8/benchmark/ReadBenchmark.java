@@ -0,0 +1,156 @@
+package net.benmann.orm8.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.benmann.orm8.benchmark.BenchDb.Item;
+import net.benmann.orm8.benchmark.BenchDb.Store;
+import net.benmann.orm8.db.ColumnBatch;
+import net.benmann.orm8.db.ColumnarResults;
+import net.benmann.orm8.db.CompiledQuery;
+import net.benmann.orm8.db.ORM8Results;
+import net.benmann.orm8.db.SelectedColumns;
+
+/**
+ * Selects against a populated db: mapping rows to records with AbstractRecordResults.get(), selecting by id with
+ * a new and a compiled query, getAll, Query.count(), a join through ORM8Table.join, and reading the last page by
+ * seeking with Query.after. Row mapping and getAll scores are per row; the others are per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark {
+    static final int ITEMS = 1000;
+    static final int PARTS_PER_ITEM = 4;
+    static final int BATCH = 100;
+
+    @Param({ "MEMORY", "FILE" })
+    Store store;
+
+    BenchDb db;
+    CompiledQuery<Item> byId;
+    /** The record before the last page */
+    Item lastPage;
+    int n = 0;
+
+    @Setup public void open() throws Exception {
+        db = BenchDb.open(store);
+        db.populate(ITEMS, PARTS_PER_ITEM);
+        byId = db.items.prepareQuery((t, p) -> t.id.is(p.get(0)));
+        lastPage = db.items.where(t -> t.id.is(ITEMS - BATCH)).select().get();
+
+        int rows = 0;
+        try (ORM8Results<?> results = join(1)) {
+            while (results.get() != null) {
+                rows++;
+            }
+        }
+        if (rows != PARTS_PER_ITEM)
+            throw new IllegalStateException("The join matched " + rows + " rows rather than " + PARTS_PER_ITEM);
+    }
+
+    @TearDown public void close() throws Exception {
+        db.close();
+    }
+
+    private int nextId() {
+        n = n % ITEMS + 1;
+        return n;
+    }
+
+    @Benchmark @OperationsPerInvocation(ITEMS) public void mapRows(Blackhole bh) {
+        try (ORM8Results<Item> results = db.items.all().select()) {
+            Item item;
+            while ((item = results.get()) != null) {
+                bh.consume(item);
+            }
+        }
+    }
+
+    @Benchmark public Item selectById() {
+        int id = nextId();
+        try (ORM8Results<Item> results = db.items.where(t -> t.id.is(id)).select()) {
+            return results.get();
+        }
+    }
+
+    @Benchmark public Item selectByIdCompiled() {
+        try (ORM8Results<Item> results = byId.select(nextId())) {
+            return results.get();
+        }
+    }
+
+    @Benchmark @OperationsPerInvocation(BATCH) public Map<Integer, Item> getAll() {
+        List<Integer> ids = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            ids.add(nextId());
+        }
+        return db.items.getAll(ids);
+    }
+
+    @Benchmark @OperationsPerInvocation(ITEMS) public double[] selectDoubles() {
+        return db.items.all().selectDoubles(t -> t.price);
+    }
+
+    @Benchmark @OperationsPerInvocation(ITEMS) public double selectColumnar() {
+        double total = 0;
+        try (ColumnarResults<Item> batches = db.items.all().selectColumnar(t -> new SelectedColumns(t.id, t.price), BATCH)) {
+            for (ColumnBatch<Item> batch : batches) {
+                double[] prices = batch.getDoubles(t -> t.price).getValues();
+                for (int row = 0; row < batch.size(); row++) {
+                    total += prices[row];
+                }
+            }
+        }
+        return total;
+    }
+
+    @Benchmark public void pageAfter(Blackhole bh) {
+        db.items.all().after(lastPage).first(BATCH).forEach(bh::consume);
+    }
+
+    @Benchmark public int countAll() {
+        return db.items.count();
+    }
+
+    @Benchmark public int countWhere() {
+        return db.items.where(t -> t.active.is(true).and(t.price.greaterThan(100.0))).count();
+    }
+
+    @Benchmark public void join(Blackhole bh) {
+        try (ORM8Results<?> results = join(nextId())) {
+            Object row;
+            while ((row = results.get()) != null) {
+                bh.consume(row);
+            }
+        }
+    }
+
+    /**
+     * An item joined to its PARTS_PER_ITEM parts. Column.is(Column) compares with the other column's current value,
+     * not the column, so the join condition compares the part's item with the id instead.
+     */
+    private ORM8Results<?> join(int id) {
+        return db.items.join(db.parts, j -> j.right.item.is(id)).where(j -> j.left.id.is(id)).select();
+    }
+}
@@ -0,0 +1,63 @@
+package net.benmann.orm8.db;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.benmann.orm8.benchmark.BenchDb;
+import net.benmann.orm8.benchmark.BenchDb.Store;
+import net.benmann.orm8.db.OrderImpl.Order;
+import net.benmann.orm8.db.SQLiteBuilder.QuerySQL;
+
+/**
+ * SQLiteBuilder SQL generation alone: from the where() lambda to the SQL text and its parameters, without
+ * preparing or running the statement. This is in the orm8 package to reach the package private builder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlGenerationBenchmark {
+    BenchDb db;
+    int n = 0;
+
+    @Setup public void open() throws Exception {
+        db = BenchDb.open(Store.MEMORY);
+    }
+
+    @TearDown public void close() throws Exception {
+        db.close();
+    }
+
+    private static <R extends ORM8Record<R>> QuerySQL sql(Query<R> query) {
+        return query.helper.getConnection().createBuilder().selectSQL(query.where, query.helper, query.top, null, query.order);
+    }
+
+    @Benchmark public QuerySQL selectById() {
+        int id = ++n;
+        return sql(db.items.where(t -> t.id.is(id)));
+    }
+
+    @Benchmark public QuerySQL selectFiltered() {
+        double price = ++n;
+        return sql(db.items.where(t -> t.active.is(true).and(t.price.greaterThan(price), t.notes.notNull())).order(t -> Order.desc(t.price)).first(10));
+    }
+
+    @Benchmark public QuerySQL selectJoin() {
+        int id = ++n;
+        Query<?> query = db.items.join(db.parts, j -> j.left.id.is(j.right.item)).where(j -> j.left.id.is(id));
+        return sql((Query) query);
+    }
+}
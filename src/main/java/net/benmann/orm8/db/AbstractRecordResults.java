@@ -5,6 +5,7 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
@@ -18,17 +19,30 @@ public class AbstractRecordResults<R extends ORM8Record<R>> implements Closeable
     final Supplier<R> createRecordFn;
 
     protected boolean hasNext;
+    /** For each record column, its index in the result set, or 0 if the query didn't return it. */
+    private int[] columnIndexes = null;
+    /** If set, rows are added to this cache as they're read */
+    private RecordCache cache = null;
+    private long cacheGeneration;
 	
     AbstractRecordResults(SingleQuery sq, Supplier<R> createRecordFn) {
         this.sq = sq;
         this.createRecordFn = createRecordFn;
         try {
             hasNext = sq.rs.next();
+            if (!hasNext)
+                sq.close();
         } catch (SQLException e) {
             throw new DbException(e);
         }
 	}
 	
+    /** Add each row read to cache, unless it's changed since generation */
+    void cacheTo(RecordCache cache, long generation) {
+        this.cache = cache;
+        this.cacheGeneration = generation;
+    }
+
     public boolean isValid() {
         return hasNext;
     }
@@ -37,40 +51,78 @@ public class AbstractRecordResults<R extends ORM8Record<R>> implements Closeable
         if (!hasNext)
             return null;
 
-        try {
-            R result = createRecordFn.get();
-
-            // TODO - update result columns based on available params, in order.
-            // columns must come from the SingleQuery, and reflect what we asked
-            // for!!
-            // TODO - find out if a column's name is in the resultset, before
-            // offering to update it.
-            ResultSetMetaData rsMetaData = sq.rs.getMetaData();
-            int numberOfColumns = rsMetaData.getColumnCount();
+        return read(createRecordFn.get());
+	}
 
-            Map<String, Integer> columnMap = new HashMap<String, Integer>();
+    /**
+     * Run action on every remaining row, overwriting a single record in place for each one rather than creating a
+     * record per row. The record is only valid during the call: it must not be kept, or escape action in any way.
+     * Closes the results when done.
+     */
+    public void scan(Consumer<? super R> action) {
+        try {
+            if (!hasNext)
+                return;
 
-            // The query result is more likely a subset of the table, so we add that to the map.
-            for (int i = 1; i < numberOfColumns + 1; i++) {
-                columnMap.put(rsMetaData.getColumnName(i), i);
+            R record = createRecordFn.get();
+            while (hasNext) {
+                action.accept(read(record));
             }
+        } finally {
+            close();
+        }
+    }
 
-            for (Column<?> column : result.getColumns()) {
-                Integer index = columnMap.get(column.getName());
-                if (index == null)
-                    continue;
-                column.update(sq.rs, index);
+    /** Copy the current row into record, and advance. */
+    private R read(R record) {
+        try {
+            Column<?>[] columns = record.getColumns();
+            int[] indexes = columnIndexes(columns);
+            for (int c = 0; c < columns.length; c++) {
+                if (indexes[c] != 0)
+                    columns[c].update(sq.rs, indexes[c]);
             }
+            sq.rowRead();
+            if (cache != null)
+                cache.put(record, cacheGeneration);
 
             hasNext = sq.rs.next();
             if (!hasNext)
                 sq.close();
 
-            return result;
+            return record;
         } catch (SQLException e) {
             throw new DbException(e);
         }
-	}
+    }
+
+    /**
+     * Match the record's columns to the result set's by name. Every record from a table has its columns in the same
+     * order, so this is only done for the first row.
+     */
+    private int[] columnIndexes(Column<?>[] columns) throws SQLException {
+        if (columnIndexes != null && columnIndexes.length == columns.length)
+            return columnIndexes;
+
+        ResultSetMetaData rsMetaData = sq.rs.getMetaData();
+        int numberOfColumns = rsMetaData.getColumnCount();
+
+        Map<String, Integer> columnMap = new HashMap<String, Integer>();
+
+        // The query result is more likely a subset of the table, so we add that to the map.
+        for (int i = 1; i < numberOfColumns + 1; i++) {
+            columnMap.put(rsMetaData.getColumnName(i), i);
+        }
+
+        int[] result = new int[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            Integer index = columnMap.get(columns[c].getName());
+            result[c] = index == null ? 0 : index;
+        }
+
+        columnIndexes = result;
+        return result;
+    }
 
     @Override public void close() {
         sq.close();
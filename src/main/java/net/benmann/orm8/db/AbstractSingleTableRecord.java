@@ -4,6 +4,7 @@ import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import net.benmann.orm8.db.Column.ColumnFactory;
 
@@ -101,22 +102,37 @@ public abstract class AbstractSingleTableRecord<R extends AbstractSingleTableRec
     }
 
     /**
-     * Insert the whole record - apart from any autoincrement.
+     * A precomputed write statement for one shape of record. Isn't this query the same EVERY TIME? For records of
+     * one table with the same null (insert) or dirty (update) columns, it is - so calculate it once, and never again.
+     * Column indexes refer to getColumns().
      */
-    //Here's the million millisecond question: Isn't this query the same EVERY TIME? So calculate it once - and never do so again.
     static class CachedRecordData {
-        static int nextStatementKey = 0;
-
-        String insertSql = null;
-        String[] insertColumnIndexes = null;
-        int[] insertParams = null;
-        int[] insertKeys = null;
-        int insertStatementKey = nextStatementKey++;
+        final String sql;
+        /** Names of the columns returned as generated keys, if any */
+        final String[] generatedKeys;
+        /** Columns bound, in order, to the statement parameters */
+        final int[] params;
+        /** Columns updated, in order, from the generated keys */
+        final int[] keys;
+        final String statementKey;
+
+        CachedRecordData(String sql, String[] generatedKeys, int[] params, int[] keys) {
+            this.sql = sql;
+            this.generatedKeys = generatedKeys;
+            this.params = params;
+            this.keys = keys;
+            this.statementKey = StatementCache.key(sql, generatedKeys);
+        }
     }
 
-    /** If the record was created using create(), will call insert(); if retrieved from the db, will call update() */
+    /**
+     * Update the row with this record's key, if there is one, otherwise insert the record. Only dirty columns are
+     * updated. A record without its autoincrement key is simply inserted; a missing row is inserted as insert() would,
+     * so its autoincrement key is assigned by the db.
+     */
     public void insertOrUpdate() {
-
+        getConnection().createBuilder().upsert(this);
+        flagAllClean();
     }
 
     public void insert() {
@@ -125,10 +141,12 @@ public abstract class AbstractSingleTableRecord<R extends AbstractSingleTableRec
     }
 
     /**
-     * Should be able to update that record based on what's dirty
+     * Write the record's dirty columns to its row. With a VERSION column, returns false (leaving the record dirty) if
+     * the row's version has changed since the record was read, ie someone else has updated it.
      */
     public boolean update() {
-        getConnection().createBuilder().update(this);
+        if (!getConnection().createBuilder().update(this))
+            return false;
         flagAllClean();
         return true;
     }
@@ -137,4 +155,25 @@ public abstract class AbstractSingleTableRecord<R extends AbstractSingleTableRec
         getConnection().createBuilder().delete((R) this);
         flagAllClean();
     }
+
+    /** insert(), on the connection's async executor. Don't change the record until it completes. */
+    public CompletableFuture<Void> insertAsync() {
+        return getConnection().async(() -> {
+            insert();
+            return null;
+        });
+    }
+
+    /** update(), on the connection's async executor. Don't change the record until it completes. */
+    public CompletableFuture<Boolean> updateAsync() {
+        return getConnection().async(this::update);
+    }
+
+    /** delete(), on the connection's async executor */
+    public CompletableFuture<Void> deleteAsync() {
+        return getConnection().async(() -> {
+            delete();
+            return null;
+        });
+    }
 }
\ No newline at end of file
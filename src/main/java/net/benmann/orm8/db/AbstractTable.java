@@ -1,9 +1,18 @@
 package net.benmann.orm8.db;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
+import net.benmann.orm8.db.AbstractSingleTableRecord.CachedRecordData;
 import net.benmann.orm8.db.RecordSource.SingleSource;
 import net.benmann.orm8.db.VersionTable.VersionRecord;
 
@@ -11,6 +20,19 @@ import net.benmann.orm8.db.VersionTable.VersionRecord;
  * A database table.
  */
 public class AbstractTable<T extends AbstractTable<T, R, D>, R extends AbstractSingleTableRecord<R>, D extends DbConnection<D>> extends ORM8Table<T, R, D> {
+    /** Insert statements, keyed by the bitmask of null nullable columns (which are omitted) */
+    final Map<Long, CachedRecordData> insertData = new ConcurrentHashMap<>();
+    /** Update statements, keyed by the bitmask of dirty columns */
+    final Map<Long, CachedRecordData> updateData = new ConcurrentHashMap<>();
+    /** The update half of an upsert, keyed by the bitmask of dirty columns */
+    final Map<Long, CachedRecordData> upsertData = new ConcurrentHashMap<>();
+    /** Delete by key */
+    volatile CachedRecordData deleteData = null;
+    /** Rows by key, if enabled */
+    volatile RecordCache recordCache = null;
+
+    /** The most rows sent to the db in one statement by insertAll, unless specified */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
 
     protected AbstractTable(D connection, String tableName, Function<T, R> createRecord) {
         super(new SingleSource<T, R, D>(connection, tableName, createRecord));
@@ -28,6 +50,134 @@ public class AbstractTable<T extends AbstractTable<T, R, D>, R extends AbstractS
         return new AbstractRecordResults<R>(recordSource.connection.query(sql, params), () -> helper.create());
     }
 
+    /**
+     * Get the record for each key, with one select per chunk of keys rather than one per key; cached records
+     * aren't selected at all. Keys without a record are left out of the result. Only for tables with a single key
+     * column.
+     */
+    public <K> Map<K, R> getAll(Collection<K> keys) {
+        int keyIndex = keyIndex();
+        Map<K, R> result = new HashMap<>();
+        Collection<K> missing = keys;
+
+        RecordCache cache = recordCache;
+        if (cache != null && getConnection().currentTransaction() == null) {
+            missing = new ArrayList<>();
+            for (K key : keys) {
+                R record = key == null ? null : cache.get(key, this::create);
+                if (record != null) {
+                    result.put(key, record);
+                } else {
+                    missing.add(key);
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Collection<K> selected = missing;
+            where(t -> AbstractTable.<K> column(t, keyIndex).in(selected)).forEach(record -> result.put(AbstractTable.<K> column(record, keyIndex).get(), record));
+        }
+        return result;
+    }
+
+    /**
+     * A loader which gathers the keys requested by concurrent callers over window (or until there are
+     * maxBatchSize of them), and gets them with one getAll. Close it when it's no longer needed.
+     */
+    public <K> KeyLoader<K, R> loader(int maxBatchSize, long window, TimeUnit unit) {
+        return new KeyLoader<K, R>(this, maxBatchSize, window, unit);
+    }
+
+    /** The index of the table's only key column */
+    int keyIndex() {
+        Column<?>[] columns = helper.getColumns();
+        int result = -1;
+        for (int c = 0; c < columns.length; c++) {
+            if (Collections.disjoint(columns[c].keyType, KeyType.keys))
+                continue;
+            if (result != -1)
+                throw new DbException("getAll needs a single key column, but " + getRecordSource().tableName + " has several.");
+            result = c;
+        }
+        if (result == -1)
+            throw new DbException("getAll needs a key column, but " + getRecordSource().tableName + " has none.");
+        return result;
+    }
+
+    @SuppressWarnings("unchecked") private static <K> Column<K> column(AbstractSingleTableRecord<?> record, int index) {
+        return (Column<K>) record.getColumns()[index];
+    }
+
+    /**
+     * Insert all the records in one transaction, batchSize rows per multi-row INSERT. Autoincrement keys are written
+     * back to each record.
+     */
+    public void insertAll(Collection<R> records) {
+        insertAll(records, DEFAULT_BATCH_SIZE);
+    }
+
+    public void insertAll(Collection<R> records, int batchSize) {
+        getConnection().createBuilder().insertAll(records.iterator(), batchSize);
+    }
+
+    /**
+     * Insert all the records from the stream in one transaction, batchSize rows per multi-row INSERT. The stream is consumed
+     * as it's inserted, so it needn't fit in memory.
+     */
+    public void insertAll(Stream<R> records) {
+        insertAll(records, DEFAULT_BATCH_SIZE);
+    }
+
+    public void insertAll(Stream<R> records, int batchSize) {
+        getConnection().createBuilder().insertAll(records.iterator(), batchSize);
+    }
+
+    /** insertOrUpdate each record, all in one transaction */
+    public void upsertAll(Collection<R> records) {
+        getConnection().createBuilder().upsertAll(records.iterator());
+    }
+
+    public void upsertAll(Stream<R> records) {
+        getConnection().createBuilder().upsertAll(records.iterator());
+    }
+
+    /**
+     * Cache up to maxSize rows of this table by primary key, so that selecting a record by key (with where, or a
+     * compiled query) needn't query the db. Rows are cached as they're selected, and forgotten when they're written
+     * through ORM8, or after timeToLive (0 to keep them until evicted). Writes made any other way - arbitrary SQL,
+     * or other processes - aren't seen until the row expires, so only cache tables which change rarely, or only
+     * through this connection.
+     */
+    public void enableCache(int maxSize, long timeToLive, TimeUnit unit) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("The cache size must be positive, not " + maxSize);
+
+        recordCache = new RecordCache(helper.getColumns(), maxSize, unit.toNanos(timeToLive));
+    }
+
+    public void disableCache() {
+        recordCache = null;
+    }
+
+    /** Forget every cached row, for example after changing the table with arbitrary SQL */
+    public void clearCache() {
+        RecordCache cache = recordCache;
+        if (cache != null)
+            cache.clear();
+    }
+
+    /** The number of selects answered from the cache */
+    public long getCacheHits() {
+        RecordCache cache = recordCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    /** The number of key lookups which weren't in the cache */
+    public long getCacheMisses() {
+        RecordCache cache = recordCache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
     /**
      * Get the number of migrations we've already done on the open db
      */
@@ -1,18 +1,21 @@
 package net.benmann.orm8.db;
 
 
+/** An aggregate function of a column, whose result is a T. */
 public class Aggregate<T> {
     public enum Fn {
         MIN,
         MAX,
         AVG,
-        SUM
+        SUM,
+        COUNT
     }
 
-    final Column<T> column;
+    /** The column aggregated, or null for COUNT(*) */
+    final Column<?> column;
     final Aggregate.Fn fn;
 
-    Aggregate(Aggregate.Fn fn, Column<T> column) {
+    Aggregate(Aggregate.Fn fn, Column<?> column) {
         this.column = column;
         this.fn = fn;
     }
@@ -24,4 +27,27 @@ public class Aggregate<T> {
     public static <Q> Aggregate<Q> max(Column<Q> column) {
         return new Aggregate<Q>(Fn.MAX, column);
     }
-}
\ No newline at end of file
+
+    /** The total, of the column's type (so an Integer column's total must fit in one); null if there are no non-null values */
+    public static <Q extends Number> Aggregate<Q> sum(Column<Q> column) {
+        return new Aggregate<Q>(Fn.SUM, column);
+    }
+
+    public static Aggregate<Double> avg(Column<? extends Number> column) {
+        return new Aggregate<Double>(Fn.AVG, column);
+    }
+
+    /** COUNT(*) */
+    public static Aggregate<Long> count() {
+        return new Aggregate<Long>(Fn.COUNT, null);
+    }
+
+    /** The count of non-null values of column */
+    public static Aggregate<Long> count(Column<?> column) {
+        return new Aggregate<Long>(Fn.COUNT, column);
+    }
+
+    boolean matches(Aggregate.Fn fn, Column<?> column) {
+        return this.fn == fn && this.column == column;
+    }
+}
@@ -0,0 +1,5 @@
+package net.benmann.orm8.db;
+
+public interface AggregateFn<R extends ORM8Record<R>> {
+    Aggregate<?> get(R record);
+}
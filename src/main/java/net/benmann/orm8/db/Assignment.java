@@ -0,0 +1,64 @@
+package net.benmann.orm8.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * New column values for Query.update, built with Column.setTo and combined with and():
+ *
+ * <pre>
+ * db.users.where(t -&gt; t.lastSeen.lt(cutoff)).update(t -&gt; t.status.setTo(Status.IDLE).and(t.updated.setTo(now)));
+ * </pre>
+ */
+public class Assignment {
+    /** One column's part of the SET clause: column=expression */
+    static class ColumnValue {
+        final Column<?> column;
+        /** The new value's SQL, with a ? for param if there is one */
+        final String expression;
+        final SQLFilterParam<?> param;
+
+        ColumnValue(Column<?> column, String expression, SQLFilterParam<?> param) {
+            this.column = column;
+            this.expression = expression;
+            this.param = param;
+        }
+    }
+
+    final List<ColumnValue> sets;
+
+    private Assignment(List<ColumnValue> sets) {
+        this.sets = sets;
+    }
+
+    /** Set column to value; null sets it to NULL. */
+    static <T> Assignment of(Column<T> column, T value) {
+        if (value == null)
+            return new Assignment(Collections.singletonList(new ColumnValue(column, "NULL", null)));
+        return new Assignment(Collections.singletonList(new ColumnValue(column, "?", new SQLFilterParam<T>(column, value))));
+    }
+
+    /** Add amount to column's current value in the db, counting NULL as 0 */
+    static <T> Assignment add(Column<T> column, T amount) {
+        if (amount == null)
+            throw new DbException("Can't add null to " + column.name);
+        return new Assignment(Collections.singletonList(new ColumnValue(column, "COALESCE(" + column.name + ", 0)+?", new SQLFilterParam<T>(column, amount))));
+    }
+
+    /** These values, and other's */
+    public Assignment and(Assignment other) {
+        List<ColumnValue> result = new ArrayList<>(sets);
+        result.addAll(other.sets);
+        return new Assignment(result);
+    }
+
+    int parameterCount() {
+        int count = 0;
+        for (ColumnValue set : sets) {
+            if (set.param != null)
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,5 @@
+package net.benmann.orm8.db;
+
+public interface AssignmentFn<R extends ORM8Record<R>> {
+    Assignment get(R record);
+}
@@ -0,0 +1,62 @@
+package net.benmann.orm8.db;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The default executor for a connection's async queries. It uses a virtual thread per task when the JVM has them
+ * (Java 21 and later), otherwise a fixed pool of daemon threads. Either way at most size tasks run at once, one per
+ * jdbc connection, so waiting tasks queue here rather than piling onto the writer when every reader is busy.
+ */
+class AsyncExecutor implements Executor, AutoCloseable {
+    private final ExecutorService threads;
+    /** Limits concurrent virtual threads; the fixed pool limits itself. */
+    private final Semaphore permits;
+
+    AsyncExecutor(String name, int size) {
+        ExecutorService virtual = virtualThreads();
+        if (virtual != null) {
+            threads = virtual;
+            permits = new Semaphore(size);
+        } else {
+            threads = Executors.newFixedThreadPool(size, r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            permits = null;
+        }
+    }
+
+    /** A virtual thread per task executor, or null before Java 21. Looked up reflectively, since ORM8 targets Java 8. */
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override public void execute(Runnable task) {
+        if (permits == null) {
+            threads.execute(task);
+            return;
+        }
+
+        threads.execute(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /** Run the tasks already submitted, and accept no more */
+    @Override public void close() {
+        threads.shutdown();
+    }
+}
@@ -10,10 +10,12 @@ public enum CLAUSE {
     ISNULL,
     EQ,
     AND,
+    OR,
     LIKE,
     LT,
     GTE,
-    LTE;
+    LTE,
+    IN;
 
     public <T> SingleTableFilter getFilter(AbstractSingleTableRecord<?> record, Column<T> column) {
         return new ColumnSTFilter<T>(this, record, column);
@@ -23,6 +25,10 @@ public enum CLAUSE {
         return new BinarySTFilter<T>(this, record, column, param);
     }
 
+    public <T> SingleTableFilter getFilter(AbstractSingleTableRecord<?> record, Column<T> column, QueryParam<T> param) {
+        return new BinarySTFilter<T>(this, record, column, param);
+    }
+
     public <T> SingleTableFilter getFilter(AbstractSingleTableRecord<?> record, Column<T> column, Column<T> other) {
         return new BinaryColumnSTFilter<T>(this, record, column, other);
     }
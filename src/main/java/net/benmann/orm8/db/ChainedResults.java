@@ -0,0 +1,48 @@
+package net.benmann.orm8.db;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The results of several selects, one after the other. Each select is only run once the previous one's results
+ * have been read.
+ */
+class ChainedResults<R extends ORM8Record<R>> implements ORM8Results<R> {
+    private final Iterator<Supplier<ORM8Results<R>>> remaining;
+    private ORM8Results<R> current = null;
+
+    ChainedResults(List<Supplier<ORM8Results<R>>> selects) {
+        this.remaining = selects.iterator();
+    }
+
+    /** Move on to the next select with a record, if the current one is finished */
+    private boolean advance() {
+        while (current == null || !current.isValid()) {
+            if (current != null)
+                current.close();
+            current = null;
+            if (!remaining.hasNext())
+                return false;
+            current = remaining.next().get();
+        }
+        return true;
+    }
+
+    @Override public R get() {
+        return advance() ? current.get() : null;
+    }
+
+    @Override public boolean isValid() {
+        return advance();
+    }
+
+    @Override public void close() {
+        if (current != null)
+            current.close();
+        current = null;
+        while (remaining.hasNext()) {
+            remaining.next();
+        }
+    }
+}
@@ -3,14 +3,18 @@ package net.benmann.orm8.db;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
 
+import net.benmann.orm8.db.SingleTableFilter.InSTFilter;
+
 public abstract class Column<T> {
     /** Column names MUST NOT conflict with db engine internals. The default mechanism to handle this is to always prefix them with db_ */
     public static final String COLUMN_PREFIX = "db_";
@@ -93,6 +97,16 @@ public abstract class Column<T> {
         private IntegerColumn(AbstractSingleTableRecord<?> record, String name, KeyType... keyTypes) {
             super(record, ColumnType.INTEGER, name, keyTypes);
         }
+
+        /** Add n to this column's value (NULL counting as 0), in Query.update */
+        public Assignment add(int n) {
+            return Assignment.add(this, n);
+        }
+
+        /** See Column.increment */
+        public boolean increment(int n) {
+            return increment(n, Integer::sum);
+        }
     }
 
     public static class UUIDColumn extends Column<UUID> {
@@ -105,6 +119,16 @@ public abstract class Column<T> {
         private DoubleColumn(AbstractSingleTableRecord<?> record, String name, KeyType... keyTypes) {
             super(record, ColumnType.DOUBLE, name, keyTypes);
         }
+
+        /** Add n to this column's value (NULL counting as 0), in Query.update */
+        public Assignment add(double n) {
+            return Assignment.add(this, n);
+        }
+
+        /** See Column.increment */
+        public boolean increment(double n) {
+            return increment(n, Double::sum);
+        }
     }
 
     public static class DoubleArrayColumn extends Column<double[]> {
@@ -117,6 +141,16 @@ public abstract class Column<T> {
         private LongColumn(AbstractSingleTableRecord<?> record, String name, KeyType... keyTypes) {
             super(record, ColumnType.LONG, name, keyTypes);
         }
+
+        /** Add n to this column's value (NULL counting as 0), in Query.update */
+        public Assignment add(long n) {
+            return Assignment.add(this, n);
+        }
+
+        /** See Column.increment */
+        public boolean increment(long n) {
+            return increment(n, Long::sum);
+        }
     }
 
     public static class StringColumn extends Column<String> {
@@ -127,6 +161,10 @@ public abstract class Column<T> {
         public SingleTableFilter like(String t) {
             return CLAUSE.LIKE.getFilter(record, this, t);
         }
+
+        public SingleTableFilter like(QueryParam<String> t) {
+            return CLAUSE.LIKE.getFilter(record, this, t);
+        }
     }
 
     public static class DateColumn extends Column<Date> {
@@ -255,6 +293,10 @@ public abstract class Column<T> {
     public SingleTableFilter greaterThan(T t) {
         return CLAUSE.GT.getFilter(record, this, t);
     }
+
+    public SingleTableFilter greaterThan(QueryParam<T> t) {
+        return CLAUSE.GT.getFilter(record, this, t);
+    }
     
     public SingleTableFilter gt(Column<T> t) {
         return gt(t.get());
@@ -264,6 +306,10 @@ public abstract class Column<T> {
         return CLAUSE.GT.getFilter(record, this, t);
     }
 
+    public SingleTableFilter gt(QueryParam<T> t) {
+        return CLAUSE.GT.getFilter(record, this, t);
+    }
+
     public SingleTableFilter lessThan(Column<T> t) {
         return lessThan(t.get());
     }
@@ -272,6 +318,10 @@ public abstract class Column<T> {
         return CLAUSE.LT.getFilter(record, this, t);
     }
 
+    public SingleTableFilter lessThan(QueryParam<T> t) {
+        return CLAUSE.LT.getFilter(record, this, t);
+    }
+
     public SingleTableFilter lt(Column<T> t) {
         return lt(t.get());
     }
@@ -280,6 +330,10 @@ public abstract class Column<T> {
         return CLAUSE.LT.getFilter(record, this, t);
     }
 
+    public SingleTableFilter lt(QueryParam<T> t) {
+        return CLAUSE.LT.getFilter(record, this, t);
+    }
+
     public SingleTableFilter greaterThanOrEqual(Column<T> t) {
         return greaterThanOrEqual(t.get());
     }
@@ -288,6 +342,10 @@ public abstract class Column<T> {
         return CLAUSE.GTE.getFilter(record, this, t);
     }
 
+    public SingleTableFilter greaterThanOrEqual(QueryParam<T> t) {
+        return CLAUSE.GTE.getFilter(record, this, t);
+    }
+
     public SingleTableFilter gte(Column<T> t) {
         return gte(t.get());
     }
@@ -296,6 +354,10 @@ public abstract class Column<T> {
         return CLAUSE.GTE.getFilter(record, this, t);
     }
 
+    public SingleTableFilter gte(QueryParam<T> t) {
+        return CLAUSE.GTE.getFilter(record, this, t);
+    }
+
     public SingleTableFilter lessThanOrEqual(Column<T> t) {
         return lessThanOrEqual(t.get());
     }
@@ -304,6 +366,10 @@ public abstract class Column<T> {
         return CLAUSE.LTE.getFilter(record, this, t);
     }
 
+    public SingleTableFilter lessThanOrEqual(QueryParam<T> t) {
+        return CLAUSE.LTE.getFilter(record, this, t);
+    }
+
     public SingleTableFilter lte(Column<T> t) {
         return lte(t.get());
     }
@@ -312,6 +378,10 @@ public abstract class Column<T> {
         return CLAUSE.LTE.getFilter(record, this, t);
     }
 
+    public SingleTableFilter lte(QueryParam<T> t) {
+        return CLAUSE.LTE.getFilter(record, this, t);
+    }
+
     public SingleTableFilter is(T t) {
         if (t == null) {
             return isNull();
@@ -319,6 +389,11 @@ public abstract class Column<T> {
     	return CLAUSE.EQ.getFilter(record, this, t);
     }
 
+    /** Compare with a compiled query parameter. A null argument matches nothing; use isNull for that. */
+    public SingleTableFilter is(QueryParam<T> t) {
+        return CLAUSE.EQ.getFilter(record, this, t);
+    }
+
     public SingleTableFilter is(Column<T> t) {
         //TODO Is Column<T> using the lambda helper? If so, we want the column filter  
         return is(t.get());
@@ -328,6 +403,28 @@ public abstract class Column<T> {
     //        return CLAUSE.EQ.getFilter(table, this, other);
     //    }
 
+    /**
+     * Add amount to the column in the record's row, with one UPDATE by key, so concurrent increments aren't lost. A
+     * NULL counts as 0. The record's own value is increased by amount as well, which may not match the db if others
+     * have changed it. Returns false if the record's row doesn't exist.
+     */
+    boolean increment(T amount, BinaryOperator<T> sum) {
+        boolean found = record.getConnection().createBuilder().increment(record, this, amount);
+        if (found)
+            value = value == null ? amount : sum.apply(value, amount);
+        return found;
+    }
+
+    /** This column's new value in Query.update */
+    public Assignment setTo(T value) {
+        return Assignment.of(this, value);
+    }
+
+    /** Matches values in the collection. Long lists are split between several statements by the query. */
+    public SingleTableFilter in(Collection<? extends T> values) {
+        return new InSTFilter<T>(record, this, values);
+    }
+
     public SingleTableFilter notNull() {
         return CLAUSE.NOTNULL.getFilter(record, this);
     }
@@ -0,0 +1,229 @@
+package net.benmann.orm8.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Up to batchSize rows of a columnar select (Query.selectColumnar), held column by column: numbers in primitive
+ * arrays, strings as codes into a dictionary shared by every batch of the select, and anything else as objects.
+ * Each column has a null bitmap; a null number reads as 0, a null string as code -1.
+ *
+ * Arrays are batchSize long; only the first size() entries are rows.
+ */
+public class ColumnBatch<R extends ORM8Record<R>> {
+    /** One column's values */
+    public static abstract class Vector {
+        final BitSet nulls = new BitSet();
+
+        /** Read row's value from index of the result set */
+        abstract void read(ResultSet rs, int index, int row) throws SQLException;
+
+        public boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        /** The rows whose value is null */
+        public BitSet getNulls() {
+            return nulls;
+        }
+    }
+
+    public static class IntVector extends Vector {
+        final int[] values;
+
+        IntVector(int size) {
+            values = new int[size];
+        }
+
+        @Override void read(ResultSet rs, int index, int row) throws SQLException {
+            values[row] = rs.getInt(index);
+            if (rs.wasNull())
+                nulls.set(row);
+        }
+
+        public int get(int row) {
+            return values[row];
+        }
+
+        public int[] getValues() {
+            return values;
+        }
+    }
+
+    public static class LongVector extends Vector {
+        final long[] values;
+
+        LongVector(int size) {
+            values = new long[size];
+        }
+
+        @Override void read(ResultSet rs, int index, int row) throws SQLException {
+            values[row] = rs.getLong(index);
+            if (rs.wasNull())
+                nulls.set(row);
+        }
+
+        public long get(int row) {
+            return values[row];
+        }
+
+        public long[] getValues() {
+            return values;
+        }
+    }
+
+    public static class DoubleVector extends Vector {
+        final double[] values;
+
+        DoubleVector(int size) {
+            values = new double[size];
+        }
+
+        @Override void read(ResultSet rs, int index, int row) throws SQLException {
+            values[row] = rs.getDouble(index);
+            if (rs.wasNull())
+                nulls.set(row);
+        }
+
+        public double get(int row) {
+            return values[row];
+        }
+
+        public double[] getValues() {
+            return values;
+        }
+    }
+
+    /** The distinct strings of a column, numbered as they're first read */
+    static class Dictionary {
+        final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+    }
+
+    public static class StringVector extends Vector {
+        final int[] codes;
+        final Dictionary dictionary;
+
+        StringVector(int size, Dictionary dictionary) {
+            this.codes = new int[size];
+            this.dictionary = dictionary;
+        }
+
+        @Override void read(ResultSet rs, int index, int row) throws SQLException {
+            String value = rs.getString(index);
+            if (value == null) {
+                codes[row] = -1;
+                nulls.set(row);
+            } else {
+                codes[row] = dictionary.code(value);
+            }
+        }
+
+        public String get(int row) {
+            int code = codes[row];
+            return code == -1 ? null : dictionary.values.get(code);
+        }
+
+        /** Each row's index in getDictionary(), or -1 for null */
+        public int[] getCodes() {
+            return codes;
+        }
+
+        /** The strings read so far by this select; later batches may add to the end */
+        public List<String> getDictionary() {
+            return Collections.unmodifiableList(dictionary.values);
+        }
+    }
+
+    /** Reads a value of a column's own type */
+    interface ValueReader {
+        Object read(ResultSet rs, int index) throws SQLException;
+    }
+
+    /** Values of other column types (dates, enums, UUIDs...), one object each */
+    public static class ObjectVector<Q> extends Vector {
+        final Object[] values;
+        private final ValueReader reader;
+
+        ObjectVector(int size, ValueReader reader) {
+            this.values = new Object[size];
+            this.reader = reader;
+        }
+
+        @Override void read(ResultSet rs, int index, int row) throws SQLException {
+            values[row] = reader.read(rs, index);
+            if (values[row] == null)
+                nulls.set(row);
+        }
+
+        @SuppressWarnings("unchecked")
+        public Q get(int row) {
+            return (Q) values[row];
+        }
+    }
+
+    private final R helper;
+    private final Column<?>[] columns;
+    private final Vector[] vectors;
+    private final int size;
+
+    ColumnBatch(R helper, Column<?>[] columns, Vector[] vectors, int size) {
+        this.helper = helper;
+        this.columns = columns;
+        this.vectors = vectors;
+        this.size = size;
+    }
+
+    /** The number of rows in this batch */
+    public int size() {
+        return size;
+    }
+
+    public IntVector getInts(AggregateColumnFn<Integer, R> fn) {
+        return vector(fn.get(helper), IntVector.class);
+    }
+
+    public LongVector getLongs(AggregateColumnFn<Long, R> fn) {
+        return vector(fn.get(helper), LongVector.class);
+    }
+
+    public DoubleVector getDoubles(AggregateColumnFn<Double, R> fn) {
+        return vector(fn.get(helper), DoubleVector.class);
+    }
+
+    public StringVector getStrings(AggregateColumnFn<String, R> fn) {
+        return vector(fn.get(helper), StringVector.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <Q> ObjectVector<Q> getObjects(AggregateColumnFn<Q, R> fn) {
+        return vector(fn.get(helper), ObjectVector.class);
+    }
+
+    private <V extends Vector> V vector(Column<?> column, Class<V> type) {
+        for (int c = 0; c < columns.length; c++) {
+            if (columns[c] == column) {
+                if (!type.isInstance(vectors[c]))
+                    throw new DbException("Column " + column.getName() + " is held as a " + vectors[c].getClass().getSimpleName() + ", not a " + type.getSimpleName());
+                return type.cast(vectors[c]);
+            }
+        }
+        throw new DbException("Column " + column.getName() + " wasn't selected.");
+    }
+}
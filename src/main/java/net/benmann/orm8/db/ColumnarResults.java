@@ -0,0 +1,112 @@
+package net.benmann.orm8.db;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.benmann.orm8.db.Column.DoubleColumn;
+import net.benmann.orm8.db.Column.IntegerColumn;
+import net.benmann.orm8.db.Column.LongColumn;
+import net.benmann.orm8.db.Column.StringColumn;
+
+/**
+ * The batches of a columnar select, read from the result set as they're requested. Like ORM8Results, they close
+ * themselves once the last row has been read; close them (eg with try-with-resources) if they might not be read to
+ * the end.
+ */
+public class ColumnarResults<R extends ORM8Record<R>> implements Iterable<ColumnBatch<R>>, AutoCloseable {
+    private final R helper;
+    private final Column<?>[] columns;
+    private final SingleQuery sq;
+    private final int batchSize;
+    private final R scratch;
+    private final ColumnBatch.Dictionary[] dictionaries;
+    private boolean hasNext;
+
+    ColumnarResults(R helper, Column<?>[] columns, SingleQuery sq, int batchSize) {
+        this.helper = helper;
+        this.columns = columns;
+        this.sq = sq;
+        this.batchSize = batchSize;
+        this.scratch = helper.getTable().create();
+        this.dictionaries = new ColumnBatch.Dictionary[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            if (columns[c] instanceof StringColumn)
+                dictionaries[c] = new ColumnBatch.Dictionary();
+        }
+        try {
+            hasNext = sq.rs.next();
+        } catch (SQLException e) {
+            sq.close();
+            throw new DbException(e);
+        }
+        if (!hasNext)
+            sq.close();
+    }
+
+    public boolean isValid() {
+        return hasNext;
+    }
+
+    /** The next batch, or null if every row has been read */
+    public ColumnBatch<R> get() {
+        if (!hasNext)
+            return null;
+
+        ColumnBatch.Vector[] vectors = new ColumnBatch.Vector[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            vectors[c] = vector(c);
+        }
+
+        int size = 0;
+        try {
+            while (hasNext && size < batchSize) {
+                for (int c = 0; c < columns.length; c++) {
+                    vectors[c].read(sq.rs, c + 1, size);
+                }
+                sq.rowRead();
+                size++;
+                hasNext = sq.rs.next();
+            }
+        } catch (SQLException e) {
+            close();
+            throw new DbException(e);
+        }
+        if (!hasNext)
+            sq.close();
+
+        return new ColumnBatch<R>(helper, columns, vectors, size);
+    }
+
+    private ColumnBatch.Vector vector(int c) {
+        Column<?> column = columns[c];
+        if (column instanceof IntegerColumn)
+            return new ColumnBatch.IntVector(batchSize);
+        if (column instanceof LongColumn)
+            return new ColumnBatch.LongVector(batchSize);
+        if (column instanceof DoubleColumn)
+            return new ColumnBatch.DoubleVector(batchSize);
+        if (column instanceof StringColumn)
+            return new ColumnBatch.StringVector(batchSize, dictionaries[c]);
+        return new ColumnBatch.ObjectVector<Object>(batchSize, (rs, index) -> GroupQuery.read(rs, index, column, helper, scratch));
+    }
+
+    @Override public void close() {
+        hasNext = false;
+        sq.close();
+    }
+
+    @Override public Iterator<ColumnBatch<R>> iterator() {
+        return new Iterator<ColumnBatch<R>>() {
+            @Override public boolean hasNext() {
+                return isValid();
+            }
+
+            @Override public ColumnBatch<R> next() {
+                if (!isValid())
+                    throw new NoSuchElementException();
+                return get();
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package net.benmann.orm8.db;
+
+import java.util.stream.Stream;
+
+import net.benmann.orm8.db.SQLiteBuilder.QuerySQL;
+
+/**
+ * A select whose SQL is built once, and run many times with different parameter values. The where() lambda, the
+ * filter tree and the SQL text are only built by compile(); each select just binds its arguments to the cached
+ * prepared statement.
+ *
+ * <pre>
+ * CompiledQuery&lt;User&gt; byAge = db.users.where((t, p) -&gt; t.age.gte(p.get(0)).and(t.age.lt(p.get(1)))).order(t -&gt; Order.asc(t.age)).compile();
+ * for (User user : byAge.select(18, 30)) { ... }
+ * </pre>
+ *
+ * Compiled queries are immutable, and may be shared between threads.
+ */
+public class CompiledQuery<R extends ORM8Record<R>> {
+    private final R helper;
+    /** The filter and limit the SQL was built from, to find key lookups the table's cache can answer */
+    private final SingleTableFilter where;
+    private final Integer top;
+    private final QuerySQL sql;
+    private final Integer fetchSize;
+    private final int parameterCount;
+
+    CompiledQuery(R helper, SingleTableFilter where, Integer top, QuerySQL sql, Integer fetchSize) {
+        this.helper = helper;
+        this.where = where;
+        this.top = top;
+        this.sql = sql;
+        this.fetchSize = fetchSize;
+
+        int count = 0;
+        for (SQLFilterParam<?> param : sql.params) {
+            if (param.slot != null)
+                count = Math.max(count, param.slot.index + 1);
+        }
+        parameterCount = count;
+    }
+
+    /** The number of arguments select expects */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    public String getSQL() {
+        return sql.sql;
+    }
+
+    /** Run the query with the given parameter values, in QueryParams.get index order */
+    public ORM8Results<R> select(Object... args) {
+        if (args == null)
+            args = new Object[] { null };
+        if (args.length != parameterCount)
+            throw new DbException("The query takes " + parameterCount + " parameters, not " + args.length + ": " + sql.sql);
+
+        Object[] values = args;
+        return RecordCache.select(helper, where, top, values, () -> helper.getConnection().createBuilder().query(sql, fetchSize, values));
+    }
+
+    /** Stream the records from select(args); close the stream to release the statement if it isn't read to the end. */
+    public Stream<R> stream(Object... args) {
+        return select(args).stream();
+    }
+
+    @Override public String toString() {
+        return sql.sql;
+    }
+}
@@ -3,15 +3,22 @@ package net.benmann.orm8.db;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 import net.benmann.orm8.db.VersionTable.VersionRecord;
@@ -26,6 +33,24 @@ public abstract class DbConnection<DBT extends DbConnection<DBT>> implements Aut
     protected final VersionTable<DBT> _versions = new VersionTable<DBT>(getConnection()); // create(Version.<DBT> createFactory());
     protected AtomicInteger instanceReferences = new AtomicInteger(1); //There's always 1 reference on creation.
     protected String connectionString;
+    /** Each thread's innermost open transaction, if any */
+    private final ThreadLocal<Transaction> currentTransaction = new ThreadLocal<>();
+    /**
+     * Held by a thread from BEGIN until its outermost transaction ends, and by writes outside a transaction while
+     * they run, so one thread's writes never become part of another's transaction.
+     */
+    final ReentrantLock writeLock = new ReentrantLock();
+    /** Statements on the writer whose results are still being read, each holding writeLock until it's released */
+    private final Set<PreparedStatement> lockedStatements = ConcurrentHashMap.newKeySet();
+    /** Read only connections, in pooled mode; otherwise everything runs on connection. */
+    ReaderPool readers = null;
+    private final List<QueryListener> listeners = new CopyOnWriteArrayList<>();
+    /** Query results, if enabled */
+    volatile ResultCache resultCache = null;
+    /** Bumped by each write through ORM8 to a table, and when a transaction which wrote to it ends */
+    private final Map<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+    private Executor asyncExecutor = null;
+    private AsyncExecutor defaultAsyncExecutor = null;
 
     //FIXME this is stupid
     //static private Map<String, DbConnection<?>> instanceMap = new HashMap<>();
@@ -61,6 +86,13 @@ public abstract class DbConnection<DBT extends DbConnection<DBT>> implements Aut
         return new Transaction(this);
     }
 
+    /**
+     * As createTransaction, acquiring locks according to mode. Use IMMEDIATE for transactions that will write.
+     */
+    public Transaction createTransaction(Transaction.Mode mode) {
+        return new Transaction(this, mode);
+    }
+
     /**
      * Use as
      * 
@@ -77,7 +109,11 @@ public abstract class DbConnection<DBT extends DbConnection<DBT>> implements Aut
      * </pre>
      */
     public void withTransaction(Supplier<Transaction.Result> dbActions) {
-        try (Transaction t = createTransaction()) {
+        withTransaction(Transaction.Mode.DEFERRED, dbActions);
+    }
+
+    public void withTransaction(Transaction.Mode mode, Supplier<Transaction.Result> dbActions) {
+        try (Transaction t = createTransaction(mode)) {
             t.setResult(dbActions.get());
         }
     }
@@ -97,7 +133,11 @@ public abstract class DbConnection<DBT extends DbConnection<DBT>> implements Aut
     }
 
     public <T> T getWithTransaction(Supplier<Result<Transaction.Result, T>> dbActions) {
-        try (Transaction t = createTransaction()) {
+        return getWithTransaction(Transaction.Mode.DEFERRED, dbActions);
+    }
+
+    public <T> T getWithTransaction(Transaction.Mode mode, Supplier<Result<Transaction.Result, T>> dbActions) {
+        try (Transaction t = createTransaction(mode)) {
             Result<Transaction.Result, T> result = dbActions.get();
             t.setResult(result.a);
             return result.b;
@@ -124,6 +164,16 @@ public abstract class DbConnection<DBT extends DbConnection<DBT>> implements Aut
      * @throws SQLException
      */
     @Override public void close() throws SQLException {
+        synchronized (this) {
+            if (defaultAsyncExecutor != null)
+                defaultAsyncExecutor.close();
+            defaultAsyncExecutor = null;
+        }
+        if (readers != null) {
+            readers.close();
+            readers = null;
+        }
+        statementCache.close();
         connection.close();
         connection = null;
     }
@@ -138,15 +188,98 @@ public abstract class DbConnection<DBT extends DbConnection<DBT>> implements Aut
         PreparedStatement f(Connection c) throws SQLException;
     }
 
-    Map<Integer, PreparedStatement> cachedStatements = new HashMap<>();
+    /** The number of idle prepared statements kept per connection, unless changed with setStatementCacheSize */
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
 
-    public PreparedStatement getStatement(int statementKey, CreateStatementFn fn) throws SQLException {
-        PreparedStatement result = cachedStatements.get(statementKey);
-        if (result != null)
-            return result;
+    final StatementCache statementCache = new StatementCache(DEFAULT_STATEMENT_CACHE_SIZE);
 
-        result = fn.f(connection);
-        return result;
+    /**
+     * Set the maximum number of idle prepared statements kept for reuse. 0 disables statement caching.
+     */
+    public void setStatementCacheSize(int size) {
+        statementCache.setMaxSize(size);
+        if (readers != null)
+            readers.setStatementCacheSize(size);
+    }
+
+    /**
+     * Check out a cached statement for statementKey, creating it with fn if there's none idle.
+     * The statement must be handed back with releaseStatement, not closed.
+     */
+    public PreparedStatement getStatement(String statementKey, CreateStatementFn fn) throws SQLException {
+        return statementCache.get(statementKey, fn, connection);
+    }
+
+    PreparedStatement getStatement(StatementEvent event, String statementKey, CreateStatementFn fn) throws SQLException {
+        return statementCache.get(statementKey, timed(event, fn), connection);
+    }
+
+    /**
+     * Send an event for every statement run on this connection to listener. With no listeners, statements
+     * aren't timed at all.
+     */
+    public void addListener(QueryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(QueryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** A new event for a statement, or null if nobody's listening. */
+    StatementEvent event(String table, String sql) {
+        if (listeners.isEmpty())
+            return null;
+        return new StatementEvent(table, sql);
+    }
+
+    void fire(StatementEvent event) {
+        if (event == null)
+            return;
+        for (QueryListener listener : listeners) {
+            listener.onStatement(event);
+        }
+    }
+
+    /** Wrap fn to record a cache miss and the prepare time in event; fn is only called on a miss. */
+    private static CreateStatementFn timed(StatementEvent event, CreateStatementFn fn) {
+        if (event == null)
+            return fn;
+
+        event.cacheHit = true;
+        return c -> {
+            event.cacheHit = false;
+            long start = System.nanoTime();
+            try {
+                return fn.f(c);
+            } finally {
+                event.prepareNanos = System.nanoTime() - start;
+            }
+        };
+    }
+
+    /** Execute statement, adding the time taken to event. */
+    static boolean execute(PreparedStatement statement, StatementEvent event) throws SQLException {
+        if (event == null)
+            return statement.execute();
+
+        long start = System.nanoTime();
+        try {
+            return statement.execute();
+        } finally {
+            event.executeNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Return a statement from getStatement to the cache.
+     */
+    public void releaseStatement(PreparedStatement statement) {
+        if (readers != null && readers.release(statement))
+            return;
+        statementCache.release(statement);
+        if (lockedStatements.remove(statement))
+            writeLock.unlock();
     }
 
     /**
@@ -156,12 +289,27 @@ public abstract class DbConnection<DBT extends DbConnection<DBT>> implements Aut
      * implementation we're going to use, and let it build the connectionstring.
      */
     static protected <T extends DbConnection<T>> T create(String connectionString, CreateDBFn<T> fn) {
+        return create(connectionString, 0, fn);
+    }
+
+    /**
+     * Create a pooled connection: one writer, plus readerCount read only connections which run selects, counts
+     * and aggregates concurrently. The db is switched to WAL journalling, which lets readers proceed while a write is
+     * in progress. Reads inside a transaction still use the writer, so they see the transaction's changes. The db
+     * must be a file; each connection to :memory: would be a different db.
+     */
+    static protected <T extends DbConnection<T>> T create(String connectionString, int readerCount, CreateDBFn<T> fn) {
+        if (readerCount > 0 && connectionString.contains(":memory:"))
+            throw new DbException("A pooled connection cannot use an in-memory db: " + connectionString);
+
         try {
             T result = fn.create();
 
             result.connectionString = connectionString;
 
             result.connection = DriverManager.getConnection(connectionString);
+            if (readerCount > 0)
+                result.exec("PRAGMA journal_mode=WAL");
 
             synchronized (migratedConnections) {
                 migratedConnections.add(result.getClass());
@@ -169,6 +317,9 @@ public abstract class DbConnection<DBT extends DbConnection<DBT>> implements Aut
 
             result.migrate();
 
+            if (readerCount > 0)
+                result.readers = new ReaderPool(connectionString, readerCount, DEFAULT_STATEMENT_CACHE_SIZE);
+
             result.init();
 
             return result;
@@ -248,54 +399,227 @@ public abstract class DbConnection<DBT extends DbConnection<DBT>> implements Aut
      * Manually execute an sql command.
      */
     public void exec(String sql) {
+        StatementEvent event = event(null, sql);
+        long start = event == null ? 0 : System.nanoTime();
+        writeLock.lock();
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(sql);
+            if (event != null) {
+                event.executeNanos = System.nanoTime() - start;
+                event.rows = Math.max(stmt.getUpdateCount(), 0);
+                fire(event);
+            }
         } catch (SQLException e) {
             throw new DbException(connectionString + "\nError executing " + sql, e);
+        } finally {
+            writeLock.unlock();
         }
     }
 
-    /** Run arbitrary SQL, without any type checking. */
+    /**
+     * Run arbitrary SQL, without any type checking. It may write, so other threads' writes and reads on the writer
+     * wait until the results are closed.
+     */
     public SingleQuery query(String sql, Object... params) {
-        PreparedStatement stmt = prepare(sql);
+        StatementEvent event = event(null, sql);
+        PreparedStatement stmt = prepareLocked(event, sql);
 
         try {
             if (params != null && params.length > 0) {
+                if (event != null)
+                    event.bindCount = params.length;
                 for (int i = 0; i < params.length; i++) {
                     stmt.setObject(i + 1, params[i]);
                 }
             }
         } catch (SQLException e1) {
+            releaseStatement(stmt);
             throw new DbException(e1);
         }
 
-        return runQuery(stmt);
+        return runQuery(stmt, event);
     }
 
-    PreparedStatement prepare(String sql) {
-        PreparedStatement ps;
+    /**
+     * Check out a prepared statement for sql from the statement cache. Release it with releaseStatement.
+     */
+    PreparedStatement prepare(String sql, String... generatedKeys) {
+        return prepare(null, sql, generatedKeys);
+    }
+
+    /** As prepare, recording a cache hit or miss, and the prepare time, in event (which may be null). */
+    PreparedStatement prepare(StatementEvent event, String sql, String... generatedKeys) {
         try {
-            ps = connection.prepareStatement(sql);
+            if (generatedKeys == null || generatedKeys.length == 0)
+                return getStatement(event, sql, c -> c.prepareStatement(sql));
+
+            return getStatement(event, StatementCache.key(sql, generatedKeys), c -> c.prepareStatement(sql, generatedKeys));
         } catch (SQLException e) {
             throw new DbException(sql, e);
         }
-        return ps;
+    }
+
+    /** The calling thread's innermost open transaction, if any */
+    Transaction currentTransaction() {
+        return currentTransaction.get();
+    }
+
+    void setCurrentTransaction(Transaction transaction) {
+        if (transaction == null) {
+            currentTransaction.remove();
+        } else {
+            currentTransaction.set(transaction);
+        }
+    }
+
+    /**
+     * As prepare, for a statement which only reads. In pooled mode, it's prepared on a free reader unless this
+     * thread is in a transaction (whose uncommitted changes only the writer can see) or every reader is busy.
+     * Otherwise it's prepared on the writer, as prepareLocked.
+     */
+    PreparedStatement prepareRead(StatementEvent event, String sql) {
+        if (readers != null && currentTransaction() == null) {
+            try {
+                PreparedStatement result = readers.prepare(sql, timed(event, c -> c.prepareStatement(sql)));
+                if (result != null)
+                    return result;
+            } catch (SQLException e) {
+                throw new DbException(sql, e);
+            }
+        }
+        return prepareLocked(event, sql);
+    }
+
+    /**
+     * Prepare a statement on the writer once any other thread's transaction has ended, and hold writeLock until it's
+     * released, so other threads can't write on the connection while it runs or its results are read. Its results
+     * must be closed on the thread which ran it.
+     */
+    private PreparedStatement prepareLocked(StatementEvent event, String sql) {
+        writeLock.lock();
+        try {
+            PreparedStatement result = prepare(event, sql);
+            lockedStatements.add(result);
+            return result;
+        } catch (RuntimeException e) {
+            writeLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Cache the results of up to maxEntries counts, min/max aggregates and selects limited (with first) to at most
+     * maxRows records, by SQL and parameter values. A result is reused until a table it read is written through
+     * ORM8, or another connection (or process) commits to the db. Writes with raw SQL on this connection aren't
+     * noticed; call clearResultCache after them.
+     */
+    public void enableResultCache(int maxEntries, int maxRows) {
+        resultCache = new ResultCache(this, maxEntries, maxRows);
+    }
+
+    public void disableResultCache() {
+        resultCache = null;
+    }
+
+    public void clearResultCache() {
+        ResultCache cache = resultCache;
+        if (cache != null)
+            cache.clear();
+    }
+
+    public long getResultCacheHits() {
+        ResultCache cache = resultCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    public long getResultCacheMisses() {
+        ResultCache cache = resultCache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    long tableVersion(String table) {
+        AtomicLong version = tableVersions.get(table);
+        return version == null ? 0 : version.get();
+    }
+
+    /** Note a write to table, now and (since reads on other connections can't see it until then) at commit */
+    void written(String table) {
+        tableVersions.computeIfAbsent(table, t -> new AtomicLong()).incrementAndGet();
+        Transaction transaction = currentTransaction();
+        if (transaction != null)
+            transaction.written(table);
+    }
+
+    /** SQLite's count of commits by other connections, as seen by this one */
+    long dataVersion() {
+        String sql = "PRAGMA data_version";
+        PreparedStatement ps = null;
+        try {
+            ps = getStatement(sql, c -> c.prepareStatement(sql));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new DbException(sql, e);
+        } finally {
+            if (ps != null)
+                releaseStatement(ps);
+        }
+    }
+
+    /** True if reads are spread over a pool of reader connections */
+    public boolean isPooled() {
+        return readers != null;
+    }
+
+    /**
+     * Run async queries (selectAsync, countAsync, insertAsync...) on executor, rather than the default: virtual
+     * threads where available, otherwise a pool of daemon threads, running at most one task per jdbc connection.
+     */
+    public synchronized void setAsyncExecutor(Executor executor) {
+        asyncExecutor = executor;
+    }
+
+    public synchronized Executor getAsyncExecutor() {
+        if (asyncExecutor != null)
+            return asyncExecutor;
+        if (defaultAsyncExecutor == null)
+            defaultAsyncExecutor = new AsyncExecutor("orm8-async", readers == null ? 1 : readers.size() + 1);
+        return defaultAsyncExecutor;
+    }
+
+    /**
+     * Start a writer thread which commits the writes queued on it in batches of up to maxBatchSize, waiting up to
+     * linger for each batch to fill. Close it to stop the thread.
+     */
+    public WriteQueue writeQueue(int maxBatchSize, long linger, TimeUnit unit) {
+        return new WriteQueue(this, maxBatchSize, linger, unit);
+    }
+
+    /** Run action on the async executor */
+    public <T> CompletableFuture<T> async(Supplier<T> action) {
+        return CompletableFuture.supplyAsync(action, getAsyncExecutor());
     }
 
     SingleQuery runQuery(PreparedStatement statement) {
+        return runQuery(statement, null);
+    }
+
+    /** Run a query; event (if any) is sent when the SingleQuery is closed. */
+    SingleQuery runQuery(PreparedStatement statement, StatementEvent event) {
         try {
-            if (!statement.execute()) {
-                statement.close();
+            if (!execute(statement, event)) {
+                if (event != null) {
+                    event.rows = Math.max(statement.getUpdateCount(), 0);
+                    fire(event);
+                }
+                releaseStatement(statement);
                 return null;
             }
 
-            return new SingleQuery(statement);
+            return new SingleQuery(this, statement, event);
         } catch (SQLException e) {
-            try {
-                statement.close();
-            } catch (SQLException e1) {
-                throw new DbException(e1);
-            }
+            releaseStatement(statement);
             throw new DbException(e);
         }
     }
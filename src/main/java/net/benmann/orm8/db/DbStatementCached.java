@@ -18,7 +18,8 @@ public class DbStatementCached implements DbStatement {
 	}
 	
 	@Override public <T> T query(DbConnection db, MapSingleResult<T> handler) {
-		try (PreparedStatement stmt = db.connection.prepareStatement(sql, params)) {
+		PreparedStatement stmt = db.prepare(sql, params);
+		try {
 			if (!stmt.execute())
 				return null;
 			
@@ -27,11 +28,14 @@ public class DbStatementCached implements DbStatement {
 			}
         } catch (SQLException e) {
         	throw new DbException(e);
+		} finally {
+			db.releaseStatement(stmt);
 		}
 	}
 	
 	@Override public <T> List<T> query(DbConnection db, MapRow<T> handler) {
-		try (PreparedStatement stmt = db.connection.prepareStatement(sql, params)) {
+		PreparedStatement stmt = db.prepare(sql, params);
+		try {
     		List<T> result = new ArrayList<T>();
     		if (!stmt.execute())
     			return result;
@@ -46,6 +50,8 @@ public class DbStatementCached implements DbStatement {
     		} while(true);        		
         } catch (SQLException e) {
         	throw new DbException(e);
+		} finally {
+			db.releaseStatement(stmt);
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package net.benmann.orm8.db;
+
+/**
+ * One row of a grouped query: the values of the grouping columns, and of the aggregates computed for them. Columns
+ * are named with the same lambdas as the query, and each accessor returns the column's own type.
+ */
+public class Group<R extends ORM8Record<R>> {
+    private final R helper;
+    private final Column<?>[] columns;
+    private final Object[] keys;
+    private final Aggregate<?>[] aggregates;
+    private final Object[] values;
+
+    Group(R helper, Column<?>[] columns, Object[] keys, Aggregate<?>[] aggregates, Object[] values) {
+        this.helper = helper;
+        this.columns = columns;
+        this.keys = keys;
+        this.aggregates = aggregates;
+        this.values = values;
+    }
+
+    /** The value of a grouping column */
+    @SuppressWarnings("unchecked")
+    public <Q> Q get(AggregateColumnFn<Q, R> fn) {
+        Column<Q> column = fn.get(helper);
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] == column)
+                return (Q) keys[i];
+        }
+        throw new DbException("The query isn't grouped by " + column.getName());
+    }
+
+    /** COUNT(*) */
+    public long count() {
+        return (Long) value(Aggregate.Fn.COUNT, null);
+    }
+
+    public <Q> long count(AggregateColumnFn<Q, R> fn) {
+        return (Long) value(Aggregate.Fn.COUNT, fn.get(helper));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <Q> Q min(AggregateColumnFn<Q, R> fn) {
+        return (Q) value(Aggregate.Fn.MIN, fn.get(helper));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <Q> Q max(AggregateColumnFn<Q, R> fn) {
+        return (Q) value(Aggregate.Fn.MAX, fn.get(helper));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <Q extends Number> Q sum(AggregateColumnFn<Q, R> fn) {
+        return (Q) value(Aggregate.Fn.SUM, fn.get(helper));
+    }
+
+    public <Q extends Number> Double avg(AggregateColumnFn<Q, R> fn) {
+        return (Double) value(Aggregate.Fn.AVG, fn.get(helper));
+    }
+
+    private Object value(Aggregate.Fn fn, Column<?> column) {
+        for (int i = 0; i < aggregates.length; i++) {
+            if (aggregates[i].matches(fn, column))
+                return values[i];
+        }
+        throw new DbException("The query didn't compute " + fn + "(" + (column == null ? "*" : column.getName()) + ")");
+    }
+}
@@ -0,0 +1,5 @@
+package net.benmann.orm8.db;
+
+public interface GroupColumnFn<R extends ORM8Record<R>> {
+    Column<?> get(R record);
+}
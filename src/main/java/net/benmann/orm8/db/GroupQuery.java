@@ -0,0 +1,108 @@
+package net.benmann.orm8.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.benmann.orm8.db.SQLiteBuilder.QuerySQL;
+
+/**
+ * A query grouped by some columns, from Query.groupBy. aggregate computes any number of aggregates for every group
+ * in a single statement:
+ *
+ * <pre>
+ * for (Group&lt;Order&gt; g : db.orders.all().groupBy(t -&gt; t.category).aggregate(t -&gt; Aggregate.count(), t -&gt; Aggregate.sum(t.amount)))
+ *     report(g.get(t -&gt; t.category), g.count(), g.sum(t -&gt; t.amount));
+ * </pre>
+ */
+public final class GroupQuery<R extends ORM8Record<R>> {
+    private final R helper;
+    private final SingleTableFilter where;
+    private final Integer top;
+    private final OrderFn<R> order;
+    private final Column<?>[] columns;
+
+    GroupQuery(R helper, SingleTableFilter where, Integer top, OrderFn<R> order, Column<?>[] columns) {
+        this.helper = helper;
+        this.where = where;
+        this.top = top;
+        this.order = order;
+        this.columns = columns;
+    }
+
+    /** One Group per distinct value of the grouping columns, in the query's order, each with every aggregate */
+    @SafeVarargs public final List<Group<R>> aggregate(AggregateFn<R>... fns) {
+        Aggregate<?>[] aggregates = new Aggregate<?>[fns.length];
+        for (int i = 0; i < fns.length; i++) {
+            aggregates[i] = fns[i].get(helper);
+        }
+        return aggregate(aggregates);
+    }
+
+    List<Group<R>> aggregate(Aggregate<?>[] aggregates) {
+        SQLiteBuilder builder = helper.getConnection().createBuilder();
+        QuerySQL query = builder.selectSQL(where, helper, top, t -> new SelectedColumns(columns, aggregates), order);
+        List<Group<R>> result = new ArrayList<>();
+        try (SingleQuery sq = builder.query(query, null)) {
+            R scratch = helper.getTable().create();
+            while (sq.rs.next()) {
+                sq.rowRead();
+                Object[] keys = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    keys[i] = read(sq.rs, i + 1, columns[i], helper, scratch);
+                }
+                Object[] values = new Object[aggregates.length];
+                for (int i = 0; i < aggregates.length; i++) {
+                    values[i] = read(sq.rs, columns.length + i + 1, aggregates[i], helper, scratch);
+                }
+                result.add(new Group<R>(helper, columns, keys, aggregates, values));
+            }
+        } catch (SQLException e) {
+            throw new DbException(query.sql, e);
+        }
+        return result;
+    }
+
+    /** An aggregate's result: COUNT is a Long, AVG a Double, SUM, MIN and MAX the column's type */
+    static <R extends ORM8Record<R>> Object read(ResultSet rs, int index, Aggregate<?> aggregate, R helper, R scratch) throws SQLException {
+        switch (aggregate.fn) {
+        case COUNT:
+            return rs.getLong(index);
+        case AVG:
+            return rs.getObject(index) == null ? null : rs.getDouble(index);
+        case SUM:
+            if (rs.getObject(index) == null)
+                return null;
+            switch (aggregate.column.columnType.dataType) {
+            case INTEGER:
+                long sum = rs.getLong(index);
+                if (sum != (int) sum)
+                    throw new DbException("The sum of " + aggregate.column.getName() + " is too large for an Integer.");
+                return (int) sum;
+            case LONG:
+                return rs.getLong(index);
+            default:
+                return rs.getDouble(index);
+            }
+        default:
+            return read(rs, index, aggregate.column, helper, scratch);
+        }
+    }
+
+    /** A value of column's type, read into the matching column of scratch (a record from the same table) */
+    static <R extends ORM8Record<R>> Object read(ResultSet rs, int index, Column<?> column, R helper, R scratch) throws SQLException {
+        if (rs.getObject(index) == null)
+            return null;
+
+        Column<?>[] columns = helper.getColumns();
+        for (int c = 0; c < columns.length; c++) {
+            if (columns[c] == column) {
+                Column<?> target = scratch.getColumns()[c];
+                target.update(rs, index);
+                return target.get();
+            }
+        }
+        throw new DbException("Column " + column.getName() + " isn't from this query's table.");
+    }
+}
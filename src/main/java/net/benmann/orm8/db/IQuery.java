@@ -1,14 +1,37 @@
 package net.benmann.orm8.db;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
 import net.benmann.orm8.db.ORM8Table.IColumnCondition;
 
 public interface IQuery<R extends ORM8Record<R>> {
     /** Return the count of records matching this query */
     int count();
 
+    /** The count of records matching this query, or limit if there are more; only reads up to limit rows */
+    int countUpTo(int limit);
+
+    /** True if any record matches this query; stops at the first */
+    boolean exists();
+
     /** Delete all records matching this query */
     void delete();
 
+    /** Set columns of every record matching this query, with a single UPDATE. Returns the number of rows changed. */
+    int update(AssignmentFn<R> assignment);
+
+    /** count(), on the connection's async executor */
+    CompletableFuture<Integer> countAsync();
+
+    /** delete(), on the connection's async executor */
+    CompletableFuture<Void> deleteAsync();
+
+    /** Read every record from this query into a list, on the connection's async executor */
+    CompletableFuture<List<R>> selectAsync();
+
     /** Modifies this query to only return the first result. */
     IQuery<R> first();
 
@@ -27,9 +50,42 @@ public interface IQuery<R extends ORM8Record<R>> {
     /** Adds conditions to this query */
     public IQuery<R> where(IColumnCondition<R> condition);
 
+    /** Group the matching records by a column, to compute aggregates for each group with one statement */
+    public GroupQuery<R> groupBy(GroupColumnFn<R> fn);
+
+    public GroupQuery<R> groupBy(GroupColumnFn<R> fn1, GroupColumnFn<R> fn2);
+
+    public GroupQuery<R> groupBy(GroupColumnFn<R> fn1, GroupColumnFn<R> fn2, GroupColumnFn<R> fn3);
+
+    public GroupQuery<R> groupBy(List<GroupColumnFn<R>> fns);
+
+    /** Build this query's SQL once, to run repeatedly with different parameter values */
+    public CompiledQuery<R> compile();
+
+    /** The records which come after lastSeen in this query's order */
+    public IQuery<R> after(R lastSeen);
+
+    /** The first size records, with a token for the next page */
+    public Page<R> page(int size);
+
+    /** The size records after the page whose next token this is */
+    public Page<R> page(String token, int size);
+
     /** Get an iterable resultset from this query */
     public ORM8Results<R> select();
 
     /** Get an iterable resultset for specific columns from this query */
     public ORM8Results<R> select(SelectColumns<R> columns);
+
+    /** Modifies this query to fetch rows from the driver n at a time */
+    public IQuery<R> fetchSize(int n);
+
+    /** Get a lazily fetched stream of records from this query; close it to release the statement */
+    public Stream<R> stream();
+
+    /** Run action on every record from this query */
+    public void forEach(Consumer<? super R> action);
+
+    /** Run action on every record from this query, reusing a single record which must not escape action */
+    public void scan(Consumer<? super R> action);
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+package net.benmann.orm8.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the keys asked for by concurrent callers, and loads them together with AbstractTable.getAll: one select
+ * per batch, rather than one per key. A batch is loaded once the first key in it has waited for the window, or
+ * as soon as it has maxBatchSize keys.
+ *
+ * <pre>
+ * KeyLoader&lt;Integer, User&gt; users = db.users.loader(100, 2, TimeUnit.MILLISECONDS);
+ * CompletableFuture&lt;User&gt; user = users.load(id);
+ * </pre>
+ *
+ * Futures complete with null for keys without a record. Callers asking for the same key in the same batch share
+ * one record. Batches are loaded on the loader's own thread; close the loader to stop it.
+ */
+public class KeyLoader<K, R extends AbstractSingleTableRecord<R>> implements AutoCloseable {
+    private static class Batch<K, R> {
+        final Map<K, CompletableFuture<R>> futures = new LinkedHashMap<>();
+    }
+
+    private final AbstractTable<?, R, ?> table;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final ScheduledExecutorService executor;
+    private Batch<K, R> current = null;
+    private boolean closed = false;
+
+    KeyLoader(AbstractTable<?, R, ?> table, int maxBatchSize, long window, TimeUnit unit) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Invalid batch size " + maxBatchSize);
+
+        table.keyIndex(); //Fail now, rather than in every batch, if the table can't use getAll.
+        this.table = table;
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = unit.toNanos(window);
+        String name = "orm8-loader-" + table.getRecordSource().tableName;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** The record with this key, once its batch has been loaded */
+    public CompletableFuture<R> load(K key) {
+        if (key == null)
+            throw new IllegalArgumentException("Can't load a null key.");
+
+        CompletableFuture<R> result;
+        Batch<K, R> full = null;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("The loader is closed.");
+
+            if (current == null) {
+                Batch<K, R> batch = new Batch<>();
+                current = batch;
+                executor.schedule(() -> expire(batch), windowNanos, TimeUnit.NANOSECONDS);
+            }
+
+            result = current.futures.get(key);
+            if (result != null)
+                return result;
+
+            result = new CompletableFuture<>();
+            current.futures.put(key, result);
+            if (current.futures.size() >= maxBatchSize) {
+                full = current;
+                current = null;
+            }
+        }
+
+        if (full != null) {
+            Batch<K, R> batch = full;
+            executor.execute(() -> run(batch));
+        }
+        return result;
+    }
+
+    /** Load the batch when its window ends, unless it was already loaded because it filled up */
+    private void expire(Batch<K, R> batch) {
+        synchronized (this) {
+            if (current != batch)
+                return;
+            current = null;
+        }
+        run(batch);
+    }
+
+    private void run(Batch<K, R> batch) {
+        try {
+            Map<K, R> records = table.getAll(batch.futures.keySet());
+            for (Map.Entry<K, CompletableFuture<R>> entry : batch.futures.entrySet()) {
+                entry.getValue().complete(records.get(entry.getKey()));
+            }
+        } catch (Throwable t) {
+            for (CompletableFuture<R> future : batch.futures.values()) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    /** Load any keys still waiting, then stop the loader's thread. */
+    @Override public void close() {
+        Batch<K, R> batch;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            batch = current;
+            current = null;
+        }
+
+        if (batch != null)
+            executor.execute(() -> run(batch));
+        executor.shutdown();
+    }
+}
@@ -6,7 +6,12 @@ import java.util.List;
 public enum KeyType {
     KEY,
     AUTOINCREMENT,
-    NULLABLE;
+    NULLABLE,
+    /**
+     * An integer or long column counting the record's updates, for optimistic locking: update() only writes the row
+     * if its version still matches the record's, and increments it. Inserts start at 1.
+     */
+    VERSION;
 
     private static <T> List<T> list(T... k) {
         return Arrays.asList(k);
@@ -1,10 +1,54 @@
 package net.benmann.orm8.db;
 
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 //Must be specialised for joins and single records based on the columns returned by the sqlprovider
-public interface ORM8Results<T extends ORM8Record<T>> {
+public interface ORM8Results<T extends ORM8Record<T>> extends Iterable<T>, AutoCloseable {
     T get();
 
     boolean isValid();
 
-    void close();
-}
\ No newline at end of file
+    @Override void close();
+
+    /**
+     * Iterate over the remaining records. Records are fetched as the iterator advances; the results close themselves
+     * once the last record has been read.
+     */
+    @Override default Iterator<T> iterator() {
+        return new Iterator<T>() {
+            @Override public boolean hasNext() {
+                return isValid();
+            }
+
+            @Override public T next() {
+                if (!isValid())
+                    throw new NoSuchElementException();
+                return get();
+            }
+        };
+    }
+
+    /** Run action on every remaining record, then close the results - even if action throws. */
+    @Override default void forEach(Consumer<? super T> action) {
+        try {
+            Iterable.super.forEach(action);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * A lazily fetched stream of the remaining records. Close the stream (eg with try-with-resources) if it
+     * might not be read to the end, to release the underlying statement.
+     */
+    default Stream<T> stream() {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+}
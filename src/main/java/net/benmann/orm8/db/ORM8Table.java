@@ -55,6 +55,24 @@ public abstract class ORM8Table<T extends ORM8Table<T, R, D>, R extends ORM8Reco
         return new Query<R>(helper, filter, null);
     }
 
+    /**
+     * Return a query with parameters, to compile() and run many times with different values:
+     * where((t, p) -> t.id.is(p.get(0))).compile()
+     */
+    public Query<R> where(ParamCondition<R> condition) {
+        helper.getColumns(); // init columns
+        SingleTableFilter filter = condition.build(helper, new QueryParams());
+        if (filter.getTable() == null)
+            throw new IllegalStateException("The filter must reference a table.");
+
+        return new Query<R>(helper, filter, null);
+    }
+
+    /** Compile a query with parameters; shorthand for where(condition).compile() */
+    public CompiledQuery<R> prepareQuery(ParamCondition<R> condition) {
+        return where(condition).compile();
+    }
+
     /**
      * TODO
      * Syntax is
@@ -96,6 +114,10 @@ public abstract class ORM8Table<T extends ORM8Table<T, R, D>, R extends ORM8Reco
         SingleTableFilter build(V b);
     }
 
+    public static interface ParamCondition<V extends ORM8Record<V>> {
+        SingleTableFilter build(V b, QueryParams p);
+    }
+
     public static interface JoinedColumnCondition {
         SingleTableFilter build(JoinedSource b);
     }
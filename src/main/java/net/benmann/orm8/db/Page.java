@@ -0,0 +1,35 @@
+package net.benmann.orm8.db;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * One page of a query's records, from Query.page, with the token for the page after it. A full page always has a
+ * next token, though the next page may turn out to be empty.
+ */
+public class Page<R> implements Iterable<R> {
+    private final List<R> records;
+    private final String next;
+
+    Page(List<R> records, String next) {
+        this.records = records;
+        this.next = next;
+    }
+
+    public List<R> getRecords() {
+        return records;
+    }
+
+    /** The token to pass to Query.page for the next page, or null if this is the last */
+    public String getNext() {
+        return next;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override public Iterator<R> iterator() {
+        return records.iterator();
+    }
+}
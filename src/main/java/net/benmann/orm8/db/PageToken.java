@@ -0,0 +1,129 @@
+package net.benmann.orm8.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+import net.benmann.orm8.db.Column.BooleanColumn;
+import net.benmann.orm8.db.Column.DateColumn;
+import net.benmann.orm8.db.Column.DoubleColumn;
+import net.benmann.orm8.db.Column.IntegerColumn;
+import net.benmann.orm8.db.Column.LongColumn;
+import net.benmann.orm8.db.Column.StringColumn;
+import net.benmann.orm8.db.Column.UUIDColumn;
+
+/**
+ * Encodes the ordering values of the last record on a page as an opaque, URL safe string, and decodes them again
+ * for the next page's seek.
+ */
+class PageToken {
+    private static final int FORMAT = 1;
+
+    private PageToken() {
+    }
+
+    static String encode(Object[] values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeByte(values.length);
+            for (Object value : values) {
+                if (value instanceof Integer) {
+                    out.writeByte('I');
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Long) {
+                    out.writeByte('J');
+                    out.writeLong((Long) value);
+                } else if (value instanceof Double) {
+                    out.writeByte('D');
+                    out.writeDouble((Double) value);
+                } else if (value instanceof Boolean) {
+                    out.writeByte('Z');
+                    out.writeBoolean((Boolean) value);
+                } else if (value instanceof String) {
+                    out.writeByte('S');
+                    out.writeUTF((String) value);
+                } else if (value instanceof Date) {
+                    out.writeByte('T');
+                    out.writeLong(((Date) value).getTime());
+                } else if (value instanceof UUID) {
+                    out.writeByte('U');
+                    out.writeLong(((UUID) value).getMostSignificantBits());
+                    out.writeLong(((UUID) value).getLeastSignificantBits());
+                } else {
+                    throw new DbException("Can't make a page token from a " + (value == null ? "null" : value.getClass().getName()) + "; use Query.after instead.");
+                }
+            }
+        } catch (IOException e) {
+            throw new DbException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /** The values from a token, which must hold one value of each column's type */
+    static Object[] decode(String token, Column<?>[] columns) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            if (in.readByte() != FORMAT || in.readByte() != columns.length)
+                throw new DbException("The page token doesn't belong to this query: " + token);
+
+            Object[] values = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                byte type = in.readByte();
+                if (type != type(columns[i]))
+                    throw new DbException("Invalid page token: " + token);
+                switch (type) {
+                case 'I':
+                    values[i] = in.readInt();
+                    break;
+                case 'J':
+                    values[i] = in.readLong();
+                    break;
+                case 'D':
+                    values[i] = in.readDouble();
+                    break;
+                case 'Z':
+                    values[i] = in.readBoolean();
+                    break;
+                case 'S':
+                    values[i] = in.readUTF();
+                    break;
+                case 'T':
+                    values[i] = new Date(in.readLong());
+                    break;
+                case 'U':
+                    values[i] = new UUID(in.readLong(), in.readLong());
+                    break;
+                default:
+                    throw new DbException("Invalid page token: " + token);
+                }
+            }
+            return values;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new DbException("Invalid page token: " + token, e);
+        }
+    }
+
+    /** The token's type code for values of the column, or 0 if they can't be in a token */
+    private static int type(Column<?> column) {
+        if (column instanceof IntegerColumn)
+            return 'I';
+        if (column instanceof LongColumn)
+            return 'J';
+        if (column instanceof DoubleColumn)
+            return 'D';
+        if (column instanceof BooleanColumn)
+            return 'Z';
+        if (column instanceof StringColumn)
+            return 'S';
+        if (column instanceof DateColumn)
+            return 'T';
+        if (column instanceof UUIDColumn)
+            return 'U';
+        return 0;
+    }
+}
@@ -1,8 +1,27 @@
 package net.benmann.orm8.db;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import net.benmann.orm8.db.ORM8Table.IColumnCondition;
+import net.benmann.orm8.db.OrderImpl.ColumnOrder;
+import net.benmann.orm8.db.OrderImpl.Order;
+import net.benmann.orm8.db.SQLiteBuilder.QuerySQL;
 
 //TODO - most of these should be in AbstractTable. Should AbstractTable be a Query, by default?
 public class Query<R extends ORM8Record<R>> implements IQuery<R> {
@@ -10,6 +29,7 @@ public class Query<R extends ORM8Record<R>> implements IQuery<R> {
     final SingleTableFilter where;
     final OrderFn<R> order;
     Integer top = null;
+    Integer fetchSize = null;
 
     /**
      * Construct an all-inclusive query
@@ -20,17 +40,118 @@ public class Query<R extends ORM8Record<R>> implements IQuery<R> {
         this.order = order;
     }
     
+    /**
+     * The filter as one or more filters, each within SQLite's limit on statement parameters. A long IN list is
+     * divided between them, so records match at most one.
+     */
+    private List<SingleTableFilter> chunks() {
+        return chunks(SQLiteBuilder.MAX_PARAMETERS);
+    }
+
+    private List<SingleTableFilter> chunks(int maxParameters) {
+        if (where == null)
+            return Collections.singletonList(null);
+        return where.split(maxParameters);
+    }
+
 	/**
 	 * Equivalent to SELECT COUNT(*)
 	 */
     @Override public int count() {
-        return helper.getConnection().createBuilder().countAll(helper, where);
+        int count = 0;
+        for (SingleTableFilter chunk : chunks()) {
+            count += helper.getConnection().createBuilder().countAll(helper, chunk);
+        }
+        return count;
 	}
+
+    /**
+     * Equivalent to SELECT COUNT(*) FROM (SELECT 1 ... LIMIT limit)
+     */
+    @Override public int countUpTo(int limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("Invalid limit " + limit);
+
+        int count = 0;
+        for (SingleTableFilter chunk : chunks()) {
+            if (count >= limit)
+                break;
+            count += helper.getConnection().createBuilder().countAll(helper, chunk, limit - count);
+        }
+        return count;
+    }
+
+    @Override public boolean exists() {
+        return countUpTo(1) > 0;
+    }
 	
     @Override public void delete() {
-        helper.getConnection().createBuilder().delete(helper, where);
+        List<SingleTableFilter> chunks = chunks();
+        if (chunks.size() == 1) {
+            helper.getConnection().createBuilder().delete(helper, where);
+            return;
+        }
+
+        helper.getConnection().withTransaction(Transaction.Mode.IMMEDIATE, () -> {
+            for (SingleTableFilter chunk : chunks) {
+                helper.getConnection().createBuilder().delete(helper, chunk);
+            }
+            return Transaction.COMMIT;
+        });
 	}
 	
+    /** A copy of this query, so an async task isn't affected by later calls to first or fetchSize */
+    private Query<R> copy() {
+        Query<R> result = new Query<R>(helper, where, order);
+        result.top = top;
+        result.fetchSize = fetchSize;
+        return result;
+    }
+
+    @Override public CompletableFuture<Integer> countAsync() {
+        Query<R> query = copy();
+        return helper.getConnection().async(query::count);
+    }
+
+    @Override public CompletableFuture<Void> deleteAsync() {
+        Query<R> query = copy();
+        return helper.getConnection().async(() -> {
+            query.delete();
+            return null;
+        });
+    }
+
+    @Override public CompletableFuture<List<R>> selectAsync() {
+        Query<R> query = copy();
+        return helper.getConnection().async(() -> {
+            List<R> result = new ArrayList<>();
+            query.forEach(result::add);
+            return result;
+        });
+    }
+
+    /**
+     * UPDATE every matching row, without reading them. Like delete, a long IN list is updated a chunk at a time
+     * within one transaction. SQLite can't limit an update, so the query mustn't have first().
+     */
+    @Override public int update(AssignmentFn<R> fn) {
+        if (top != null)
+            throw new DbException("An update can't be limited to the first " + top + " records.");
+
+        Assignment assignment = fn.get(helper);
+        List<SingleTableFilter> chunks = chunks(SQLiteBuilder.MAX_PARAMETERS - assignment.parameterCount());
+        if (chunks.size() == 1)
+            return helper.getConnection().createBuilder().update(helper, assignment, where);
+
+        return helper.getConnection().getWithTransaction(Transaction.Mode.IMMEDIATE, () -> {
+            int count = 0;
+            for (SingleTableFilter chunk : chunks) {
+                count += helper.getConnection().createBuilder().update(helper, assignment, chunk);
+            }
+            return helper.getConnection().result(Transaction.COMMIT, count);
+        });
+    }
+
 	/**
 	 * Modifies this query to only return the first result.
 	 */
@@ -46,13 +167,203 @@ public class Query<R extends ORM8Record<R>> implements IQuery<R> {
 		return this;
 	}
 	
+    /**
+     * Modifies this query to fetch rows from the driver n at a time.
+     */
+    @Override public Query<R> fetchSize(int n) {
+        fetchSize = n;
+        return this;
+    }
+
+    /**
+     * Build this query's SQL once, to run many times. Values from QueryParams are supplied to each
+     * CompiledQuery.select; everything else is fixed.
+     */
+    @Override public CompiledQuery<R> compile() {
+        if (chunks().size() != 1)
+            throw new DbException("The IN list is too long for one statement, so the query can't be compiled.");
+        return new CompiledQuery<R>(helper, where, top, helper.getConnection().createBuilder().selectSQL(where, helper, top, null, order), fetchSize);
+    }
+
+    /**
+     * Select the matching records. If the filter's IN list is too long for one statement, the records are read
+     * with one select per chunk of it, which can't be ordered or limited.
+     */
     @Override public ORM8Results<R> select() {
-        return new AbstractRecordResults<R>(helper.getConnection().createBuilder().query(where, helper, top, null, order), () -> helper.getTable().create());
+        List<SingleTableFilter> chunks = chunks();
+        if (chunks.size() == 1)
+            return select(where);
+
+        if (order != null || top != null)
+            throw new DbException("The IN list is too long for one statement, so the query can't be ordered or limited.");
+
+        List<Supplier<ORM8Results<R>>> selects = new ArrayList<>();
+        for (SingleTableFilter chunk : chunks) {
+            selects.add(() -> select(chunk));
+        }
+        return new ChainedResults<R>(selects);
 	}
+
+    private ORM8Results<R> select(SingleTableFilter filter) {
+        ResultCache cache = helper.getConnection().resultCache;
+        if (cache == null || top == null || top > cache.maxRows || !(helper.getTable() instanceof AbstractTable))
+            return RecordCache.select(helper, filter, top, null, () -> helper.getConnection().createBuilder().query(filter, helper, top, null, order, fetchSize));
+
+        SQLiteBuilder builder = helper.getConnection().createBuilder();
+        QuerySQL query = builder.selectSQL(filter, helper, top, null, order);
+        return ResultCache.select(helper, query, () -> RecordCache.select(helper, filter, top, null, () -> builder.query(query, fetchSize)));
+    }
 	
-    @Override public AbstractRecordResults<R> select(SelectColumns<R> columns) {
-        return new AbstractRecordResults<R>(helper.getConnection().createBuilder().query(where, helper, top, columns, order), () -> helper.getTable().create());
+    /**
+     * The records after lastSeen in this query's order, found with a WHERE on the order columns rather than by
+     * skipping rows, so late pages cost no more than early ones given an index on those columns. See seekOrder.
+     */
+    @Override public Query<R> after(R lastSeen) {
+        OrderImpl seekOrder = seekOrder();
+        return seek(seekOrder, values(seekOrder, lastSeen));
+    }
+
+    @Override public Page<R> page(int size) {
+        return page(null, size);
+    }
+
+    /**
+     * A page of size records: the first if token is null, otherwise those after the previous page's getNext(). The
+     * token holds the last record's order column values (see after); tokens can't be made for enum or double[]
+     * order columns.
+     */
+    @Override public Page<R> page(String token, int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Invalid page size " + size);
+
+        OrderImpl seekOrder = seekOrder();
+        Query<R> query = token == null ? new Query<R>(helper, where, r -> seekOrder) : seek(seekOrder, PageToken.decode(token, seekOrder.columns.stream().map(c -> c.column).toArray(Column<?>[]::new)));
+        query.first(size);
+        query.fetchSize = fetchSize;
+
+        List<R> records = new ArrayList<>();
+        query.forEach(records::add);
+        String next = records.size() < size ? null : PageToken.encode(values(seekOrder, records.get(size - 1)));
+        return new Page<R>(records, next);
+    }
+
+    /**
+     * This query's order, followed by the key columns it doesn't include, so that every record has its own place.
+     * Without an order, records are paged by key.
+     */
+    private OrderImpl seekOrder() {
+        OrderImpl result = order == null ? null : order.f(helper);
+        for (Column<?> column : helper.getColumns()) {
+            if (Collections.disjoint(column.keyType, KeyType.keys))
+                continue;
+
+            boolean ordered = false;
+            if (result != null) {
+                for (ColumnOrder columnOrder : result.columns) {
+                    ordered |= columnOrder.column == column;
+                }
+            }
+            if (!ordered)
+                result = result == null ? Order.asc(column) : result.asc(column);
+        }
+
+        if (result == null)
+            throw new DbException("A query without an order or key columns can't be paged.");
+        return result;
+    }
+
+    /** The record's values of the seek order's columns */
+    private Object[] values(OrderImpl seekOrder, R record) {
+        Column<?>[] columns = helper.getColumns();
+        Object[] result = new Object[seekOrder.columns.size()];
+        for (int i = 0; i < result.length; i++) {
+            Column<?> column = seekOrder.columns.get(i).column;
+            int index = Arrays.asList(columns).indexOf(column);
+            if (index < 0)
+                throw new DbException("Can't page by " + column.getName() + ", which isn't a column of the query's records.");
+            result[i] = record.getColumns()[index].get();
+            if (result[i] == null)
+                throw new DbException("Can't page after a null " + column.getName() + ".");
+        }
+        return result;
+    }
+
+    /**
+     * This query, restricted to the records after values in seekOrder. SQLite before 3.15 has no row values, so
+     * (a, b) &gt; (x, y) is written out as a &gt;= x AND (a &gt; x OR (a = x AND b &gt; y)); the leading range lets
+     * an index on a be used.
+     */
+    private Query<R> seek(OrderImpl seekOrder, Object[] values) {
+        SingleTableFilter after = null;
+        for (int i = values.length - 1; i >= 0; i--) {
+            ColumnOrder columnOrder = seekOrder.columns.get(i);
+            CLAUSE past = columnOrder.direction == OrderDirection.ASCENDING ? CLAUSE.GT : CLAUSE.LT;
+            SingleTableFilter filter = filter(past, columnOrder.column, values[i]);
+            after = after == null ? filter : filter.or(filter(CLAUSE.EQ, columnOrder.column, values[i]).and(after));
+        }
+        if (values.length > 1) {
+            ColumnOrder first = seekOrder.columns.get(0);
+            after = filter(first.direction == OrderDirection.ASCENDING ? CLAUSE.GTE : CLAUSE.LTE, first.column, values[0]).and(after);
+        }
+
+        Query<R> result = new Query<R>(helper, where == null ? after : where.and(after), r -> seekOrder);
+        result.top = top;
+        result.fetchSize = fetchSize;
+        return result;
+    }
+
+    /** values must already be of the column's type, as the record's values and decoded page tokens are */
+    @SuppressWarnings("unchecked") private static <T> SingleTableFilter filter(CLAUSE clause, Column<T> column, Object value) {
+        return clause.getFilter(column.record, column, (T) value);
+    }
+
+    /** Select just some columns of the matching records. Long IN lists are read one chunk at a time, as select does. */
+    @Override public ORM8Results<R> select(SelectColumns<R> columns) {
+        List<SingleTableFilter> chunks = chunks();
+        if (chunks.size() == 1)
+            return select(where, columns);
+
+        if (order != null || top != null)
+            throw new DbException("The IN list is too long for one statement, so the query can't be ordered or limited.");
+        if (columns != null && columns.get(helper).aggregates != null)
+            throw new DbException("The IN list is too long for one statement, so its aggregates can't be selected.");
+
+        List<Supplier<ORM8Results<R>>> selects = new ArrayList<>();
+        for (SingleTableFilter chunk : chunks) {
+            selects.add(() -> select(chunk, columns));
+        }
+        return new ChainedResults<R>(selects);
 	}
+
+    private AbstractRecordResults<R> select(SingleTableFilter filter, SelectColumns<R> columns) {
+        return new AbstractRecordResults<R>(helper.getConnection().createBuilder().query(filter, helper, top, columns, order, fetchSize), () -> helper.getTable().create());
+    }
+
+    /**
+     * Stream the matching records. Rows are read as the stream is consumed; close the stream to release the
+     * statement if it isn't read to the end.
+     */
+    @Override public Stream<R> stream() {
+        return select().stream();
+    }
+
+    /** Run action on every matching record */
+    @Override public void forEach(Consumer<? super R> action) {
+        select().forEach(action);
+    }
+
+    /**
+     * Run action on every matching record, reusing one record instance for every row. The record is overwritten
+     * by the next row, so it must not be kept once action returns. For read only scans of large tables.
+     */
+    @Override public void scan(Consumer<? super R> action) {
+        ORM8Results<R> results = select();
+        if (results instanceof AbstractRecordResults) {
+            ((AbstractRecordResults<R>) results).scan(action);
+        } else {
+            results.forEach(action);
+        }
+    }
 	
     // ????
     private <Q> SelectColumns<R> aggregateColumn(Aggregate.Fn f, AggregateColumnFn<Q, R> fn) {
@@ -63,31 +374,276 @@ public class Query<R extends ORM8Record<R>> implements IQuery<R> {
         };
     }
 
-    /**
-     * FIXME aggregates don't really work this way. They should be added as a
-     * returned column and we get the value type-safely from that.
-     */
+    /** The single aggregate selected, read as its column's type */
     @SuppressWarnings("unchecked")
-    private <Q> Q getAggregateResult(AbstractRecordResults<R> r) {
+    private <Q> Q getAggregateResult(AbstractRecordResults<R> r, Aggregate<Q> aggregate) {
         try {
-            return (Q) r.sq.rs.getObject(1); // FIXME this sucks
+            return (Q) GroupQuery.read(r.sq.rs, 1, aggregate, helper, helper.getTable().create());
         } catch (SQLException e) {
             throw new DbException(e);
         }
     }
 
     @Override public <Q> Q min(AggregateColumnFn<Q, R> fn) {
-        try (AbstractRecordResults<R> results = new AbstractRecordResults<R>(helper.getConnection().createBuilder().query(where, helper, top, aggregateColumn(Aggregate.Fn.MIN, fn), order), () -> helper.getTable().create())) {
-            return getAggregateResult(results);
-        }
+        return aggregate(Aggregate.Fn.MIN, fn);
 	}
 	
     public <Q> Q max(AggregateColumnFn<Q, R> fn) {
-        try (AbstractRecordResults<R> results = new AbstractRecordResults<R>(helper.getConnection().createBuilder().query(where, helper, top, aggregateColumn(Aggregate.Fn.MAX, fn), order), () -> helper.getTable().create())) {
-            return getAggregateResult(results);
-        }
+        return aggregate(Aggregate.Fn.MAX, fn);
 	}
 
+    /** MIN or MAX of a column. Long IN lists are aggregated one chunk at a time, and the chunks' results combined. */
+    private <Q> Q aggregate(Aggregate.Fn f, AggregateColumnFn<Q, R> fn) {
+        Q result = null;
+        for (SingleTableFilter chunk : chunks()) {
+            Q value = aggregate(f, fn, chunk);
+            if (result == null || (value != null && (compare(value, result) < 0) == (f == Aggregate.Fn.MIN)))
+                result = value;
+        }
+        return result;
+    }
+
+    /** Compare column values as the db does: enumerations by their number, anything else must be Comparable */
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        if (a instanceof EnumeratedType)
+            return Integer.compare(((EnumeratedType) a).getEnumeration(), ((EnumeratedType) b).getEnumeration());
+        if (a instanceof Comparable)
+            return ((Comparable<Object>) a).compareTo(b);
+        throw new DbException("Can't combine the results of an aggregate of " + a.getClass().getName() + " over a long IN list.");
+    }
+
+    private <Q> Q aggregate(Aggregate.Fn f, AggregateColumnFn<Q, R> fn, SingleTableFilter filter) {
+        SQLiteBuilder builder = helper.getConnection().createBuilder();
+        QuerySQL query = builder.selectSQL(filter, helper, top, aggregateColumn(f, fn), order);
+        return ResultCache.get(helper.getConnection(), query, () -> {
+            try (AbstractRecordResults<R> results = new AbstractRecordResults<R>(builder.query(query, null), () -> helper.getTable().create())) {
+                return getAggregateResult(results, new Aggregate<Q>(f, fn.get(helper)));
+            }
+        });
+    }
+
+    /** Reads a value from the current row of a result set */
+    private interface RowReader<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * A single aggregate, read from the result set as a primitive by reader rather than boxed. Long IN lists are
+     * aggregated one chunk at a time, and the chunks' results combined.
+     */
+    private <T> T aggregate(Aggregate.Fn f, Column<?> column, RowReader<T> reader, BinaryOperator<T> combine) {
+        T result = null;
+        for (SingleTableFilter chunk : chunks()) {
+            T value = aggregate(f, column, reader, chunk);
+            result = result == null ? value : combine.apply(result, value);
+        }
+        return result;
+    }
+
+    private <T> T aggregate(Aggregate.Fn f, Column<?> column, RowReader<T> reader, SingleTableFilter filter) {
+        SQLiteBuilder builder = helper.getConnection().createBuilder();
+        QuerySQL query = builder.selectSQL(filter, helper, top, t -> new SelectedColumns(new Aggregate<Object>(f, column)), order);
+        return ResultCache.get(helper.getConnection(), query, () -> {
+            try (SingleQuery sq = builder.query(query, null)) {
+                if (!sq.rs.next())
+                    return reader.read(null);
+                sq.rowRead();
+                return reader.read(sq.rs);
+            } catch (SQLException e) {
+                throw new DbException(query.sql, e);
+            }
+        });
+    }
+
+    public OptionalInt minInt(AggregateColumnFn<Integer, R> fn) {
+        return aggregate(Aggregate.Fn.MIN, fn.get(helper), Query::optionalInt, (a, b) -> !b.isPresent() || (a.isPresent() && a.getAsInt() <= b.getAsInt()) ? a : b);
+    }
+
+    public OptionalInt maxInt(AggregateColumnFn<Integer, R> fn) {
+        return aggregate(Aggregate.Fn.MAX, fn.get(helper), Query::optionalInt, (a, b) -> !b.isPresent() || (a.isPresent() && a.getAsInt() >= b.getAsInt()) ? a : b);
+    }
+
+    public OptionalLong minLong(AggregateColumnFn<Long, R> fn) {
+        return aggregate(Aggregate.Fn.MIN, fn.get(helper), Query::optionalLong, (a, b) -> !b.isPresent() || (a.isPresent() && a.getAsLong() <= b.getAsLong()) ? a : b);
+    }
+
+    public OptionalLong maxLong(AggregateColumnFn<Long, R> fn) {
+        return aggregate(Aggregate.Fn.MAX, fn.get(helper), Query::optionalLong, (a, b) -> !b.isPresent() || (a.isPresent() && a.getAsLong() >= b.getAsLong()) ? a : b);
+    }
+
+    public OptionalDouble minDouble(AggregateColumnFn<Double, R> fn) {
+        return aggregate(Aggregate.Fn.MIN, fn.get(helper), Query::optionalDouble, (a, b) -> !b.isPresent() || (a.isPresent() && a.getAsDouble() <= b.getAsDouble()) ? a : b);
+    }
+
+    public OptionalDouble maxDouble(AggregateColumnFn<Double, R> fn) {
+        return aggregate(Aggregate.Fn.MAX, fn.get(helper), Query::optionalDouble, (a, b) -> !b.isPresent() || (a.isPresent() && a.getAsDouble() >= b.getAsDouble()) ? a : b);
+    }
+
+    /** The total of an integer column; 0 if there are no values */
+    public <Q extends Number> long sumLong(AggregateColumnFn<Q, R> fn) {
+        return aggregate(Aggregate.Fn.SUM, fn.get(helper), rs -> rs == null ? 0L : rs.getLong(1), Long::sum);
+    }
+
+    /** The total of a numeric column; 0 if there are no values */
+    public <Q extends Number> double sumDouble(AggregateColumnFn<Q, R> fn) {
+        return aggregate(Aggregate.Fn.SUM, fn.get(helper), rs -> rs == null ? 0.0 : rs.getDouble(1), Double::sum);
+    }
+
+    private static OptionalInt optionalInt(ResultSet rs) throws SQLException {
+        if (rs == null)
+            return OptionalInt.empty();
+        int value = rs.getInt(1);
+        return rs.wasNull() ? OptionalInt.empty() : OptionalInt.of(value);
+    }
+
+    private static OptionalLong optionalLong(ResultSet rs) throws SQLException {
+        if (rs == null)
+            return OptionalLong.empty();
+        long value = rs.getLong(1);
+        return rs.wasNull() ? OptionalLong.empty() : OptionalLong.of(value);
+    }
+
+    private static OptionalDouble optionalDouble(ResultSet rs) throws SQLException {
+        if (rs == null)
+            return OptionalDouble.empty();
+        double value = rs.getDouble(1);
+        return rs.wasNull() ? OptionalDouble.empty() : OptionalDouble.of(value);
+    }
+
+    /**
+     * One column of every matching record, read straight from the result set into an array with no record or
+     * boxed value per row. NULLs read as 0.
+     */
+    public int[] selectInts(AggregateColumnFn<Integer, R> fn) {
+        IntStream.Builder values = IntStream.builder();
+        project(fn.get(helper), rs -> {
+            values.add(rs.getInt(1));
+            return null;
+        });
+        return values.build().toArray();
+    }
+
+    /** As selectInts, for a long column */
+    public long[] selectLongs(AggregateColumnFn<Long, R> fn) {
+        LongStream.Builder values = LongStream.builder();
+        project(fn.get(helper), rs -> {
+            values.add(rs.getLong(1));
+            return null;
+        });
+        return values.build().toArray();
+    }
+
+    /** As selectInts, for a double column */
+    public double[] selectDoubles(AggregateColumnFn<Double, R> fn) {
+        DoubleStream.Builder values = DoubleStream.builder();
+        project(fn.get(helper), rs -> {
+            values.add(rs.getDouble(1));
+            return null;
+        });
+        return values.build().toArray();
+    }
+
+    /**
+     * Select just the given columns, in batches of up to batchSize rows held column by column (see ColumnBatch),
+     * rather than as a record per row:
+     *
+     * <pre>
+     * try (ColumnarResults&lt;Item&gt; batches = db.items.all().selectColumnar(t -&gt; new SelectedColumns(t.id, t.price), 4096)) {
+     *     for (ColumnBatch&lt;Item&gt; batch : batches)
+     *         total += sum(batch.getDoubles(t -&gt; t.price).getValues(), batch.size());
+     * }
+     * </pre>
+     */
+    public ColumnarResults<R> selectColumnar(SelectColumns<R> columns, int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Invalid batch size " + batchSize);
+        if (chunks().size() != 1)
+            throw new DbException("The IN list is too long for one statement, so the query can't be read as columns.");
+
+        SelectedColumns selected = columns.get(helper);
+        if (selected.aggregates != null || selected.columns == null || selected.columns.length == 0)
+            throw new DbException("A columnar select needs a list of columns.");
+
+        SQLiteBuilder builder = helper.getConnection().createBuilder();
+        QuerySQL query = builder.selectSQL(where, helper, top, t -> selected, order);
+        return new ColumnarResults<R>(helper, selected.columns, builder.query(query, fetchSize), batchSize);
+    }
+
+    /** Select just column, passing each row to reader. Long IN lists are read one chunk at a time, as select does. */
+    private void project(Column<?> column, RowReader<Void> reader) {
+        List<SingleTableFilter> chunks = chunks();
+        if (chunks.size() != 1 && (order != null || top != null))
+            throw new DbException("The IN list is too long for one statement, so the query can't be ordered or limited.");
+
+        SQLiteBuilder builder = helper.getConnection().createBuilder();
+        for (SingleTableFilter chunk : chunks) {
+            QuerySQL query = builder.selectSQL(chunk, helper, top, t -> new SelectedColumns(column), order);
+            try (SingleQuery sq = builder.query(query, fetchSize)) {
+                while (sq.rs.next()) {
+                    sq.rowRead();
+                    reader.read(sq.rs);
+                }
+            } catch (SQLException e) {
+                throw new DbException(query.sql, e);
+            }
+        }
+    }
+
+    /**
+     * Group the matching records by the given columns, to compute aggregates for each group with one statement.
+     * The query's order and limit apply to the groups.
+     */
+    @SafeVarargs public final GroupQuery<R> groupBy(GroupColumnFn<R>... fns) {
+        Column<?>[] columns = new Column<?>[fns.length];
+        for (int i = 0; i < fns.length; i++) {
+            columns[i] = fns[i].get(helper);
+        }
+        return groupBy(columns);
+    }
+
+    @Override public GroupQuery<R> groupBy(GroupColumnFn<R> fn) {
+        return groupBy(Collections.singletonList(fn));
+    }
+
+    @Override public GroupQuery<R> groupBy(GroupColumnFn<R> fn1, GroupColumnFn<R> fn2) {
+        List<GroupColumnFn<R>> fns = new ArrayList<>();
+        fns.add(fn1);
+        fns.add(fn2);
+        return groupBy(fns);
+    }
+
+    @Override public GroupQuery<R> groupBy(GroupColumnFn<R> fn1, GroupColumnFn<R> fn2, GroupColumnFn<R> fn3) {
+        List<GroupColumnFn<R>> fns = new ArrayList<>();
+        fns.add(fn1);
+        fns.add(fn2);
+        fns.add(fn3);
+        return groupBy(fns);
+    }
+
+    @Override public GroupQuery<R> groupBy(List<GroupColumnFn<R>> fns) {
+        Column<?>[] columns = new Column<?>[fns.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = fns.get(i).get(helper);
+        }
+        return groupBy(columns);
+    }
+
+    private GroupQuery<R> groupBy(Column<?>[] columns) {
+        if (chunks().size() != 1)
+            throw new DbException("The IN list is too long for one statement, so the query can't be grouped.");
+        return new GroupQuery<R>(helper, where, top, order, columns);
+    }
+
+    /** Compute several aggregates of the matching records with one statement. */
+    @SafeVarargs public final Group<R> aggregate(AggregateFn<R>... fns) {
+        Aggregate<?>[] aggregates = new Aggregate<?>[fns.length];
+        for (int i = 0; i < fns.length; i++) {
+            aggregates[i] = fns[i].get(helper);
+        }
+        return groupBy(new Column<?>[0]).aggregate(aggregates).get(0);
+    }
+
     @Override public Query<R> order(OrderFn<R> ordering) {
         return new Query<R>(helper, where, ordering);
     }
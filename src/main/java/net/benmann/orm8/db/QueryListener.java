@@ -0,0 +1,9 @@
+package net.benmann.orm8.db;
+
+/**
+ * Receives an event for each statement run by a DbConnection. See DbConnection.addListener.
+ * Listeners are called on the thread that ran the statement, so they should be quick, and thread safe.
+ */
+public interface QueryListener {
+    void onStatement(StatementEvent event);
+}
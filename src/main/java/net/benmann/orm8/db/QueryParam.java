@@ -0,0 +1,22 @@
+package net.benmann.orm8.db;
+
+/**
+ * A placeholder for a value which is supplied when a compiled query is run, rather than when it's built. Get one
+ * from the QueryParams passed to ORM8Table.prepareQuery.
+ */
+public final class QueryParam<T> {
+    final int index;
+
+    QueryParam(int index) {
+        this.index = index;
+    }
+
+    /** The position of this parameter's value in the arguments to CompiledQuery.select */
+    public int getIndex() {
+        return index;
+    }
+
+    @Override public String toString() {
+        return "?" + index;
+    }
+}
@@ -0,0 +1,22 @@
+package net.benmann.orm8.db;
+
+/**
+ * Hands out the parameters of a compiled query. The type of each parameter is inferred from the column it's
+ * compared with:
+ *
+ * <pre>
+ * CompiledQuery&lt;User&gt; byEmail = db.users.prepareQuery((t, p) -&gt; t.email.is(p.get(0)));
+ * User user = byEmail.select("bob@test.com").get();
+ * </pre>
+ */
+public final class QueryParams {
+    QueryParams() {
+    }
+
+    /** The parameter bound to the index'th (0-based) argument of CompiledQuery.select */
+    public <T> QueryParam<T> get(int index) {
+        if (index < 0)
+            throw new IllegalArgumentException("Query parameter indexes start at 0, not " + index);
+        return new QueryParam<>(index);
+    }
+}
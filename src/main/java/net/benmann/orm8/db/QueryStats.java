@@ -0,0 +1,142 @@
+package net.benmann.orm8.db;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory QueryListener which keeps latency histograms per table and per statement shape, to find the hot
+ * queries without a profiler:
+ *
+ * <pre>
+ * QueryStats stats = new QueryStats();
+ * db.addListener(stats);
+ * ...
+ * System.out.println(stats);
+ * </pre>
+ */
+public class QueryStats implements QueryListener {
+    private final Map<String, Stats> byTable = new ConcurrentHashMap<>();
+    private final Map<String, Stats> byShape = new ConcurrentHashMap<>();
+
+    /**
+     * Counters and a latency histogram for a group of statements. Latency is prepare plus execute time. Buckets are
+     * powers of two nanoseconds, so percentiles are accurate to within a factor of two.
+     */
+    public static class Stats {
+        private static final int BUCKETS = 64;
+
+        private final String name;
+        private final long[] histogram = new long[BUCKETS];
+        private long count = 0;
+        private long cacheHits = 0;
+        private long rows = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(StatementEvent event) {
+            long nanos = event.getPrepareNanos() + event.getExecuteNanos();
+            count++;
+            if (event.isCacheHit())
+                cacheHits++;
+            rows += event.getRows();
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            histogram[BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(nanos, 1))]++;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getCacheHits() {
+            return cacheHits;
+        }
+
+        public synchronized long getCacheMisses() {
+            return count - cacheHits;
+        }
+
+        public synchronized long getRows() {
+            return rows;
+        }
+
+        public synchronized long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public synchronized long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /** The upper bound of the histogram bucket containing the given percentile (0-100) of latencies. */
+        public synchronized long getPercentileNanos(double percentile) {
+            long target = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= target && seen > 0)
+                    return i >= BUCKETS - 2 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+            return 0;
+        }
+
+        @Override public synchronized String toString() {
+            return String.format("%8d calls %8.1f%% hits %10d rows %10.3fms total %8.1fus mean %8.1fus p50 %8.1fus p99 %8.1fus max  %s", count, count == 0 ? 0.0 : 100.0 * cacheHits / count, rows, totalNanos / 1e6, getMeanNanos() / 1e3, getPercentileNanos(50) / 1e3, getPercentileNanos(99) / 1e3, maxNanos / 1e3, name);
+        }
+    }
+
+    @Override public void onStatement(StatementEvent event) {
+        String table = event.getTable() == null ? "(sql)" : event.getTable();
+        byTable.computeIfAbsent(table, Stats::new).add(event);
+        byShape.computeIfAbsent(event.getFingerprint(), Stats::new).add(event);
+    }
+
+    /** Statistics for each table, keyed by table name; arbitrary SQL is under (sql) */
+    public Map<String, Stats> byTable() {
+        return byTable;
+    }
+
+    /** Statistics for each statement shape, keyed by StatementEvent.getFingerprint */
+    public Map<String, Stats> byShape() {
+        return byShape;
+    }
+
+    /** The n shapes with the most total time */
+    public List<Stats> hottest(int n) {
+        List<Stats> result = new ArrayList<>(byShape.values());
+        result.sort(Comparator.comparingLong(Stats::getTotalNanos).reversed());
+        return result.subList(0, Math.min(n, result.size()));
+    }
+
+    public void clear() {
+        byTable.clear();
+        byShape.clear();
+    }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder("By table:\n");
+        for (Stats stats : byTable.values()) {
+            sb.append(stats).append("\n");
+        }
+        sb.append("By statement:\n");
+        for (Stats stats : hottest(byShape.size())) {
+            sb.append(stats).append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package net.benmann.orm8.db;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import net.benmann.orm8.db.DbConnection.CreateStatementFn;
+
+/**
+ * A fixed set of read only connections to a WAL journalled SQLite db, so reads run concurrently with each other
+ * and with the single writer. A reader is checked out with each statement it prepares, and returned to the pool
+ * when the statement is released.
+ */
+class ReaderPool {
+    private static class Reader {
+        final Connection connection;
+        final StatementCache statements;
+
+        Reader(Connection connection, int statementCacheSize) {
+            this.connection = connection;
+            this.statements = new StatementCache(statementCacheSize);
+        }
+    }
+
+    private final List<Reader> readers = new ArrayList<>();
+    private final BlockingQueue<Reader> idle;
+    private final Map<PreparedStatement, Reader> inUse = new IdentityHashMap<>();
+
+    ReaderPool(String connectionString, int size, int statementCacheSize) throws SQLException {
+        idle = new ArrayBlockingQueue<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                Reader reader = new Reader(DriverManager.getConnection(connectionString), statementCacheSize);
+                readers.add(reader);
+                try (Statement stmt = reader.connection.createStatement()) {
+                    stmt.execute("PRAGMA query_only = 1");
+                }
+                idle.add(reader);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Prepare sql on a free reader (with fn, if it isn't cached), or return null if every reader is busy. Callers
+     * fall back to the writer rather than waiting, so a thread holding several open result sets can't deadlock
+     * the pool.
+     */
+    PreparedStatement prepare(String sql, CreateStatementFn fn) throws SQLException {
+        Reader reader = idle.poll();
+        if (reader == null)
+            return null;
+
+        PreparedStatement ps;
+        try {
+            ps = reader.statements.get(sql, fn, reader.connection);
+        } catch (SQLException e) {
+            idle.add(reader);
+            throw e;
+        }
+
+        synchronized (inUse) {
+            inUse.put(ps, reader);
+        }
+        return ps;
+    }
+
+    /** Release a statement from prepare, returning its reader to the pool. False if it isn't one of ours. */
+    boolean release(PreparedStatement ps) {
+        Reader reader;
+        synchronized (inUse) {
+            reader = inUse.remove(ps);
+        }
+        if (reader == null)
+            return false;
+
+        reader.statements.release(ps);
+        idle.add(reader);
+        return true;
+    }
+
+    int size() {
+        return readers.size();
+    }
+
+    void setStatementCacheSize(int size) {
+        for (Reader reader : readers) {
+            reader.statements.setMaxSize(size);
+        }
+    }
+
+    void close() throws SQLException {
+        SQLException error = null;
+        for (Reader reader : readers) {
+            reader.statements.close();
+            try {
+                reader.connection.close();
+            } catch (SQLException e) {
+                error = e;
+            }
+        }
+        readers.clear();
+        idle.clear();
+        if (error != null)
+            throw error;
+    }
+}
@@ -0,0 +1,258 @@
+package net.benmann.orm8.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import net.benmann.orm8.db.SingleTableFilter.BinarySTFilter;
+import net.benmann.orm8.db.SingleTableFilter.LogicSTFilter;
+
+/**
+ * A least recently used cache of one table's rows, by primary key, with an optional time to live. Rows are kept as
+ * column values rather than records, so records read from the cache can be changed freely.
+ *
+ * Selects of every column add the rows they read; writes through ORM8 remove the rows they touch. A select which
+ * started before a write may finish after it, so rows are only added if nothing was removed since the select began
+ * (see generation). Reads within a transaction may see uncommitted rows, so they don't add to the cache, and the
+ * cache is cleared when a transaction ends.
+ */
+class RecordCache {
+    private static class Row {
+        final Object[] values;
+        final long expires;
+
+        Row(Object[] values, long expires) {
+            this.values = values;
+            this.expires = expires;
+        }
+    }
+
+    /** Indexes, in getColumns(), of the key columns */
+    private final int[] keys;
+    private final long timeToLiveNanos;
+    private final Map<Object, Row> rows;
+    private long generation = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    RecordCache(Column<?>[] columns, int maxSize, long timeToLiveNanos) {
+        int count = 0;
+        int[] keys = new int[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            if (!Collections.disjoint(columns[c].keyType, KeyType.keys))
+                keys[count++] = c;
+        }
+        if (count == 0)
+            throw new DbException("A table without key columns can't be cached.");
+
+        this.keys = Arrays.copyOf(keys, count);
+        this.timeToLiveNanos = timeToLiveNanos;
+        this.rows = new LinkedHashMap<Object, Row>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override protected boolean removeEldestEntry(Map.Entry<Object, Row> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /** The results of a key lookup answered from the cache: just the one record */
+    private static class CachedResults<R extends ORM8Record<R>> implements ORM8Results<R> {
+        private R record;
+
+        CachedResults(R record) {
+            this.record = record;
+        }
+
+        @Override public R get() {
+            R result = record;
+            record = null;
+            return result;
+        }
+
+        @Override public boolean isValid() {
+            return record != null;
+        }
+
+        @Override public void close() {
+            record = null;
+        }
+    }
+
+    /**
+     * Select every column: from the cache if the query looks up a cached key, otherwise by running query, adding
+     * the rows it reads to the cache.
+     */
+    static <R extends ORM8Record<R>> ORM8Results<R> select(R helper, SingleTableFilter where, Integer top, Object[] args, Supplier<SingleQuery> query) {
+        Supplier<R> create = () -> helper.getTable().create();
+        RecordCache cache = of(helper);
+        if (cache == null || helper.getConnection().currentTransaction() != null)
+            return new AbstractRecordResults<R>(query.get(), create);
+
+        Object key = top != null && top <= 0 ? null : cache.key(where, helper.getColumns(), args);
+        if (key != null) {
+            R record = cache.get(key, create);
+            if (record != null)
+                return new CachedResults<R>(record);
+        }
+
+        long generation = cache.generation();
+        AbstractRecordResults<R> results = new AbstractRecordResults<R>(query.get(), create);
+        results.cacheTo(cache, generation);
+        return results;
+    }
+
+    /** The cache for the record's table, or null if it isn't cached */
+    static RecordCache of(ORM8Record<?> record) {
+        ORM8Table<?, ?, ?> table = record.getTable();
+        if (table instanceof AbstractTable)
+            return ((AbstractTable<?, ?, ?>) table).recordCache;
+        return null;
+    }
+
+    /** The key of the record, or null if part of it isn't set */
+    private Object key(Column<?>[] columns) {
+        if (keys.length == 1)
+            return columns[keys[0]].get();
+
+        Object[] values = new Object[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            values[k] = columns[keys[k]].get();
+            if (values[k] == null)
+                return null;
+        }
+        return Arrays.asList(values);
+    }
+
+    /**
+     * The key a query looks up, if its filter is only key column = value (ANDed together for compound keys), with
+     * values from args for compiled queries; otherwise null.
+     */
+    Object key(SingleTableFilter where, Column<?>[] columns, Object[] args) {
+        if (where == null)
+            return null;
+
+        Object[] values = new Object[columns.length];
+        if (!keyValues(where, columns, values, args))
+            return null;
+
+        Object[] key = new Object[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            key[k] = values[keys[k]];
+            if (key[k] == null)
+                return null;
+        }
+        return keys.length == 1 ? key[0] : Arrays.asList(key);
+    }
+
+    private boolean keyValues(SingleTableFilter where, Column<?>[] columns, Object[] values, Object[] args) {
+        if (where instanceof LogicSTFilter) {
+            LogicSTFilter logic = (LogicSTFilter) where;
+            return logic.getClause() == CLAUSE.AND && keyValues(logic.getLeft(), columns, values, args) && keyValues(logic.getRight(), columns, values, args);
+        }
+        if (!(where instanceof BinarySTFilter) || where.getClause() != CLAUSE.EQ)
+            return false;
+
+        BinarySTFilter<?> filter = (BinarySTFilter<?>) where;
+        Object value = filter.getParam();
+        if (filter.slot != null) {
+            if (args == null || filter.slot.index >= args.length)
+                return false;
+            value = args[filter.slot.index];
+        }
+
+        for (int k : keys) {
+            if (columns[k] == filter.getColumn()) {
+                if (values[k] != null && !values[k].equals(value))
+                    return false;
+                values[k] = value;
+                return true;
+            }
+        }
+        return false; //Not a key column, so the filter may exclude the cached row.
+    }
+
+    /** A copy of the cached row, or null */
+    synchronized <R extends ORM8Record<R>> R get(Object key, Supplier<R> create) {
+        Row row = rows.get(key);
+        if (row != null && row.expires != 0 && row.expires - System.nanoTime() < 0) {
+            rows.remove(key);
+            row = null;
+        }
+        if (row == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+
+        R record = create.get();
+        Column<?>[] columns = record.getColumns();
+        for (int c = 0; c < columns.length; c++) {
+            set(columns[c], copy(row.values[c]));
+            columns[c].flagClean();
+        }
+        return record;
+    }
+
+    @SuppressWarnings("unchecked") static <T> void set(Column<T> column, Object value) {
+        column.set((T) value);
+    }
+
+    /** Copy mutable values, so changing one record's can't change the cached row */
+    static Object copy(Object value) {
+        if (value instanceof double[])
+            return ((double[]) value).clone();
+        if (value instanceof java.util.Date)
+            return ((java.util.Date) value).clone();
+        return value;
+    }
+
+    /** Changes each time rows are removed. Pass the generation from before a select to put. */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /** Cache a record which was read from the db, unless rows have been removed since generation */
+    synchronized void put(ORM8Record<?> record, long generation) {
+        if (generation != this.generation)
+            return;
+
+        Column<?>[] columns = record.getColumns();
+        Object key = key(columns);
+        if (key == null)
+            return;
+
+        Object[] values = new Object[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            values[c] = copy(columns[c].get());
+        }
+        rows.put(key, new Row(values, timeToLiveNanos == 0 ? 0 : (System.nanoTime() + timeToLiveNanos) | 1));
+    }
+
+    /** Forget the record's row, which is being written */
+    synchronized void remove(ORM8Record<?> record) {
+        generation++;
+        Object key = key(record.getColumns());
+        if (key != null)
+            rows.remove(key);
+    }
+
+    synchronized void clear() {
+        generation++;
+        rows.clear();
+    }
+
+    synchronized int size() {
+        return rows.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
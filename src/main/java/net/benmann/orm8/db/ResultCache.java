@@ -0,0 +1,171 @@
+package net.benmann.orm8.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import net.benmann.orm8.db.SQLiteBuilder.QuerySQL;
+
+/**
+ * A least recently used cache of query results (counts, aggregates and short selects) by SQL and parameter values.
+ * Each result is kept with the write versions of the tables it read, and the db's PRAGMA data_version; it's only
+ * used while they're unchanged. Writes through SQLiteBuilder bump their table's version (again when a transaction
+ * ends), and data_version changes when another connection or process commits. Writes made with raw SQL on this
+ * connection aren't seen.
+ *
+ * Results read while the calling thread has a transaction open may include its uncommitted changes, so they're
+ * neither cached nor read from the cache. Other threads keep using it.
+ */
+class ResultCache {
+    private static class Result {
+        final long[] versions;
+        final Object value;
+
+        Result(long[] versions, Object value) {
+            this.versions = versions;
+            this.value = value;
+        }
+    }
+
+    private final DbConnection<?> connection;
+    /** The most records a cached select can return; selects without a lower limit aren't cached */
+    final int maxRows;
+    private final Map<List<Object>, Result> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    ResultCache(DbConnection<?> connection, int maxEntries, int maxRows) {
+        this.connection = connection;
+        this.maxRows = maxRows;
+        this.entries = new LinkedHashMap<List<Object>, Result>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override protected boolean removeEldestEntry(Map.Entry<List<Object>, Result> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /** The result of query: from the connection's cache if it has one and nothing it read has changed, otherwise load's. */
+    static <T> T get(DbConnection<?> connection, QuerySQL query, Supplier<T> load) {
+        ResultCache cache = connection.resultCache;
+        if (cache == null)
+            return load.get();
+        return cache.get(query, load);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(QuerySQL query, Supplier<T> load) {
+        List<Object> key = key(query);
+        if (key == null || connection.currentTransaction() != null)
+            return load.get();
+
+        long[] versions = versions(query.tables);
+        synchronized (this) {
+            Result entry = entries.get(key);
+            if (entry != null && Arrays.equals(entry.versions, versions)) {
+                hits++;
+                return (T) RecordCache.copy(entry.value);
+            }
+            misses++;
+        }
+
+        T value = load.get();
+        if (connection.currentTransaction() == null) {
+            synchronized (this) {
+                entries.put(key, new Result(versions, RecordCache.copy(value)));
+            }
+        }
+        return value;
+    }
+
+    /** Select records through the cache, keeping them as column values so each hit gets new records. */
+    static <R extends ORM8Record<R>> ORM8Results<R> select(R helper, QuerySQL query, Supplier<ORM8Results<R>> load) {
+        List<Object[]> rows = get(helper.getConnection(), query, () -> {
+            List<Object[]> result = new ArrayList<>();
+            try (ORM8Results<R> results = load.get()) {
+                R record;
+                while ((record = results.get()) != null) {
+                    Column<?>[] columns = record.getColumns();
+                    Object[] values = new Object[columns.length];
+                    for (int c = 0; c < columns.length; c++) {
+                        values[c] = RecordCache.copy(columns[c].get());
+                    }
+                    result.add(values);
+                }
+            }
+            return result;
+        });
+        return new RowResults<R>(rows.iterator(), () -> helper.getTable().create());
+    }
+
+    /** Records made from cached column values */
+    private static class RowResults<R extends ORM8Record<R>> implements ORM8Results<R> {
+        private final Iterator<Object[]> rows;
+        private final Supplier<R> create;
+
+        RowResults(Iterator<Object[]> rows, Supplier<R> create) {
+            this.rows = rows;
+            this.create = create;
+        }
+
+        @Override public R get() {
+            if (!rows.hasNext())
+                return null;
+
+            Object[] values = rows.next();
+            R record = create.get();
+            Column<?>[] columns = record.getColumns();
+            for (int c = 0; c < columns.length; c++) {
+                RecordCache.set(columns[c], RecordCache.copy(values[c]));
+                columns[c].flagClean();
+            }
+            return record;
+        }
+
+        @Override public boolean isValid() {
+            return rows.hasNext();
+        }
+
+        @Override public void close() {
+        }
+    }
+
+    /** The SQL and parameter values, or null if a parameter can't be compared by value */
+    private static List<Object> key(QuerySQL query) {
+        List<Object> key = new ArrayList<>(query.params.size() + 1);
+        key.add(query.sql);
+        for (SQLFilterParam<?> param : query.params) {
+            if (param.slot != null || param.value instanceof double[])
+                return null;
+            key.add(param.value);
+        }
+        return key;
+    }
+
+    /** The db's data_version, then the write version of each table */
+    private long[] versions(List<String> tables) {
+        long[] result = new long[tables.size() + 1];
+        result[0] = connection.dataVersion();
+        for (int t = 0; t < tables.size(); t++) {
+            result[t + 1] = connection.tableVersion(tables.get(t));
+        }
+        return result;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -5,13 +5,39 @@ import java.sql.PreparedStatement;
 public class SQLFilterParam<T> {
     final Column<T> column;
     final T value;
+    /** Where the value comes from in a compiled query, or null if it's fixed */
+    final QueryParam<T> slot;
 
     SQLFilterParam(Column<T> column, T value) {
+        this(column, value, null);
+    }
+
+    SQLFilterParam(Column<T> column, T value, QueryParam<T> slot) {
         this.column = column;
         this.value = value;
+        this.slot = slot;
     }
 
     void set(PreparedStatement st, int index) {
+        if (slot != null)
+            throw new DbException("Query parameter " + slot.index + " has no value; run the query with CompiledQuery.select(args).");
         column.set(st, index, value);
     }
+
+    /** As set, taking a parameter's value from the arguments to a compiled query */
+    @SuppressWarnings("unchecked")
+    void set(PreparedStatement st, int index, Object[] args) {
+        if (slot == null || args == null) {
+            set(st, index);
+            return;
+        }
+
+        T arg;
+        try {
+            arg = (T) args[slot.index];
+            column.set(st, index, arg);
+        } catch (ClassCastException e) {
+            throw new DbException("Query parameter " + slot.index + " for " + column.getName() + " has the wrong type: " + args[slot.index].getClass().getName(), e);
+        }
+    }
 }
\ No newline at end of file
@@ -7,15 +7,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import net.benmann.orm8.db.AbstractSingleTableRecord.CachedRecordData;
 import net.benmann.orm8.db.AbstractTable.JoinedTable;
+import net.benmann.orm8.db.Column.IntegerColumn;
+import net.benmann.orm8.db.Column.LongColumn;
 import net.benmann.orm8.db.Aggregate.Fn;
 import net.benmann.orm8.db.OrderImpl.ColumnOrder;
 import net.benmann.orm8.db.RecordSource.SingleSource;
 import net.benmann.orm8.db.SingleTableFilter.BinarySTFilter;
 import net.benmann.orm8.db.SingleTableFilter.ColumnSTFilter;
+import net.benmann.orm8.db.SingleTableFilter.InSTFilter;
 import net.benmann.orm8.db.SingleTableFilter.LogicSTFilter;
 
 // FIXME: Split out interface
@@ -118,106 +125,520 @@ public class SQLiteBuilder {
 
 
 
+    /** The most parameters SQLite binds to one statement (SQLITE_MAX_VARIABLE_NUMBER) */
+    static final int MAX_PARAMETERS = 999;
+
+    /** Columns beyond this many can't be described by a long bitmask, so their write statements aren't cached. */
+    private static final int MAX_CACHED_COLUMNS = Long.SIZE;
+
     /** Delete only the specific record */
     <R extends AbstractSingleTableRecord<R>> void delete(R record) {
-        QuerySource<R> qs = new QuerySource<>(record, QuerySource.NO_ALIAS);
-
-        SQLBuilder sql = new SQLBuilder("DELETE").add(qs.fromClause().parts);
+        AbstractTable<?, R, ?> table = record.getTable();
         Column<?>[] columns = record.getColumns();
-        List<Column<?>> params = new ArrayList<Column<?>>();
+        CachedRecordData data = table.deleteData;
+        if (data == null) {
+            data = deleteData(table.getRecordSource().tableName, columns);
+            table.deleteData = data;
+        }
+
+        for (int c : data.params) {
+            if (columns[c].dirty)
+                throw new RuntimeException("Dirty " + columns[c].name + " in " + table.getRecordSource().tableName + " update.");
+        }
+
+        execute(table.getRecordSource().tableName, data, columns);
+        uncache(record);
+    }
 
-        sql.add("WHERE");
+    private CachedRecordData deleteData(String tableName, Column<?>[] columns) {
+        StringBuilder sql = new StringBuilder("DELETE FROM ").append(tableName).append(" WHERE ");
+        int[] params = keyColumns(columns);
+        for (int i = 0; i < params.length; i++) {
+            if (i != 0)
+                sql.append(" AND ");
+            sql.append(columns[params[i]].name).append("=?");
+        }
+        return new CachedRecordData(sql.toString(), null, params, new int[] {});
+    }
+
+    /** Write the record's dirty columns. Returns false if it has a VERSION column, and the row's has changed. */
+    boolean update(AbstractSingleTableRecord<?> record) {
+        AbstractTable<?, ?, ?> table = record.getTable();
+        String tableName = table.getRecordSource().tableName;
+        Column<?>[] columns = record.getColumns();
 
-        //Construct a list of column values for the primary key.
-        for (Column<?> column : columns) {
-            if (Collections.disjoint(column.keyType, KeyType.keys))
+        long dirty = 0;
+        boolean changed = false;
+        for (int c = 0; c < columns.length; c++) {
+            Column<?> column = columns[c];
+            if (!column.dirty || column.keyType.contains(KeyType.VERSION))
                 continue;
 
-            if (column.dirty)
-                throw new RuntimeException("Dirty " + column.name + " in " + record.getTable().getRecordSource().tableName + " update.");
+            if (!Collections.disjoint(column.keyType, KeyType.keys))
+                throw new RuntimeException("Invalid update request for " + column.name + " in " + tableName);
+
+            changed = true;
+            if (c < MAX_CACHED_COLUMNS)
+                dirty |= 1L << c;
+        }
+
+        //Nothing to write.
+        if (!changed)
+            return true;
+
+        CachedRecordData data;
+        if (columns.length > MAX_CACHED_COLUMNS) {
+            data = updateData(tableName, columns);
+        } else {
+            data = table.updateData.computeIfAbsent(dirty, k -> updateData(tableName, columns));
+        }
+
+        int version = versionColumn(columns);
+        if (version >= 0 && columns[version].get() == null)
+            throw new DbException("The record has no " + columns[version].name + " to update " + tableName + " with.");
+
+        int rows = execute(tableName, data, columns);
+        uncache(record);
+        if (version < 0)
+            return true;
+        if (rows == 0)
+            return false;
+
+        nextVersion(columns[version]);
+        return true;
+    }
+
+    /**
+     * Build an update for the record's current dirty columns, WHERE the primary key matches. A VERSION column is
+     * incremented, and must still have the record's value.
+     */
+    private CachedRecordData updateData(String tableName, Column<?>[] columns) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+        List<Integer> params = new ArrayList<>();
+        for (int c = 0; c < columns.length; c++) {
+            if (!columns[c].dirty || columns[c].keyType.contains(KeyType.VERSION))
+                continue;
 
             if (!params.isEmpty())
-                sql.add("AND");
+                sql.append(", ");
+
+            sql.append(columns[c].name).append("=?");
+            params.add(c);
+        }
+
+        int version = versionColumn(columns);
+        if (version >= 0)
+            sql.append(", ").append(columns[version].name).append("=").append(columns[version].name).append("+1");
+
+        // WHERE - must be the primary key.
+        sql.append(" WHERE ");
+        int[] keys = keyColumns(columns);
+        for (int i = 0; i < keys.length; i++) {
+            if (i != 0)
+                sql.append(" AND ");
+
+            sql.append(columns[keys[i]].name).append("=?");
+            params.add(keys[i]);
+        }
+        if (version >= 0) {
+            sql.append(" AND ").append(columns[version].name).append("=?");
+            params.add(version);
+        }
+
+        return new CachedRecordData(sql.toString(), null, toArray(params), new int[] {});
+    }
+
+    /** The index of the VERSION column, or -1 */
+    private static int versionColumn(Column<?>[] columns) {
+        for (int c = 0; c < columns.length; c++) {
+            if (columns[c].keyType.contains(KeyType.VERSION))
+                return c;
+        }
+        return -1;
+    }
+
+    /** Set a VERSION column to its next value; from null, the first. */
+    private static void nextVersion(Column<?> column) {
+        if (column instanceof IntegerColumn) {
+            Integer version = ((IntegerColumn) column).get();
+            ((IntegerColumn) column).set(version == null ? 1 : version + 1);
+        } else if (column instanceof LongColumn) {
+            Long version = ((LongColumn) column).get();
+            ((LongColumn) column).set(version == null ? 1L : version + 1L);
+        } else {
+            throw new DbException("The version column " + column.name + " must be an integer or long.");
+        }
+        column.flagClean();
+    }
+
+    /** Add amount to column, in the record's row. Returns false if there's no such row. */
+    @SuppressWarnings("unchecked")
+    <R extends AbstractSingleTableRecord<R>, T> boolean increment(AbstractSingleTableRecord<R> record, Column<T> column, T amount) {
+        R helper = (R) record;
+        SingleTableFilter where = null;
+        for (Column<?> key : record.getColumns()) {
+            if (Collections.disjoint(key.keyType, KeyType.keys))
+                continue;
+            if (key.get() == null)
+                throw new DbException("Can't increment " + column.name + " without the record's " + key.name + ".");
+            where = where == null ? is(key) : where.and(is(key));
+        }
+        if (where == null)
+            throw new DbException("Can't increment " + column.name + " in a table without key columns.");
+
+        if (update(helper, Assignment.add(column, amount), where) == 0)
+            return false;
+
+        //The update also incremented the row's version.
+        Column<?>[] columns = record.getColumns();
+        int version = versionColumn(columns);
+        if (version >= 0 && columns[version].get() != null)
+            nextVersion(columns[version]);
+        return true;
+    }
+
+    private static <K> SingleTableFilter is(Column<K> column) {
+        return column.is(column.get());
+    }
+
+    void insert(AbstractSingleTableRecord<?> record) {
+        Column<?>[] columns = record.getColumns();
+        execute(record.getTable().getRecordSource().tableName, insertData(record, columns), columns);
+        uncache(record);
+    }
 
-            sql.add(qs.columnSQL(column)).add("=?");
-            params.add(column);
+    /**
+     * Update the record's row if it exists, otherwise insert it. SQLite only has ON CONFLICT DO UPDATE from 3.24,
+     * so this is an UPDATE of the dirty columns by key, then an INSERT if it changed nothing. Both run in one
+     * IMMEDIATE transaction (or a savepoint of the current one), so no other writer can insert the row in between.
+     */
+    void upsert(AbstractSingleTableRecord<?> record) {
+        try (Transaction transaction = connection.createTransaction(Transaction.Mode.IMMEDIATE)) {
+            try {
+                upsertRow(record);
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+            transaction.commit();
+        }
+    }
+
+    /** Upsert every record in one transaction, reusing the cached statements */
+    <R extends AbstractSingleTableRecord<R>> void upsertAll(Iterator<R> records) {
+        try (Transaction transaction = connection.createTransaction(Transaction.Mode.IMMEDIATE)) {
+            try {
+                while (records.hasNext()) {
+                    R record = records.next();
+                    upsertRow(record);
+                    record.flagAllClean();
+                }
+            } catch (RuntimeException e) {
+                transaction.rollback();
+                throw e;
+            }
+            transaction.commit();
+        }
+    }
+
+    private void upsertRow(AbstractSingleTableRecord<?> record) {
+        String tableName = record.getTable().getRecordSource().tableName;
+        Column<?>[] columns = record.getColumns();
+        CachedRecordData update = upsertData(record, columns);
+        if (update == null || execute(tableName, update, columns) == 0) {
+            execute(tableName, insertData(record, columns), columns);
+        } else {
+            int version = versionColumn(columns);
+            if (version >= 0)
+                readVersion(tableName, columns, version);
+        }
+        uncache(record);
+    }
+
+    /** Read the row's VERSION into the record, after an update which incremented it without checking it */
+    private void readVersion(String tableName, Column<?>[] columns, int version) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(columns[version].name).append(" FROM ").append(tableName).append(" WHERE ");
+        int[] keys = keyColumns(columns);
+        for (int i = 0; i < keys.length; i++) {
+            if (i != 0)
+                sql.append(" AND ");
+            sql.append(columns[keys[i]].name).append("=?");
         }
 
-        try (PreparedStatement stmt = connection.connection.prepareStatement(sql.toString())) {
-            int index = 1;
-            for (Column<?> column : params) {
-                column.set(stmt, index++);
+        PreparedStatement stmt = connection.prepare(sql.toString());
+        try {
+            for (int i = 0; i < keys.length; i++) {
+                columns[keys[i]].set(stmt, i + 1);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next())
+                    columns[version].update(rs, 1);
             }
-            stmt.execute();
         } catch (SQLException e) {
             throw new DbException(sql.toString(), e);
+        } finally {
+            connection.releaseStatement(stmt);
         }
     }
 
-    void update(AbstractSingleTableRecord<?> record) {
-        String tableName = record.getTable().getRecordSource().tableName;
+    /** Find (or build) the update half of an upsert, or null if part of the record's key isn't set */
+    private CachedRecordData upsertData(AbstractSingleTableRecord<?> record, Column<?>[] columns) {
+        AbstractTable<?, ?, ?> table = record.getTable();
+        String tableName = table.getRecordSource().tableName;
+
+        long dirty = 0;
+        boolean hasKey = false;
+        for (int c = 0; c < columns.length; c++) {
+            boolean key = !Collections.disjoint(columns[c].keyType, KeyType.keys);
+            if (key && columns[c].get() == null)
+                return null;
+            if (!key && columns[c].dirty && !columns[c].keyType.contains(KeyType.VERSION) && c < MAX_CACHED_COLUMNS)
+                dirty |= 1L << c;
+            hasKey |= key;
+        }
+        if (!hasKey)
+            throw new DbException("A table without key columns can't be upserted: " + tableName);
+
+        if (columns.length > MAX_CACHED_COLUMNS)
+            return upsertData(tableName, columns);
+        return table.upsertData.computeIfAbsent(dirty, k -> upsertData(tableName, columns));
+    }
+
+    /**
+     * Build an UPDATE of the record's dirty non-key columns, WHERE the key matches. A VERSION column is incremented
+     * (whatever the record's value), so that other records holding the old version can't overwrite this change.
+     */
+    private CachedRecordData upsertData(String tableName, Column<?>[] columns) {
         StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
-        Column<?>[] columns = record.getColumns();
-        List<Column<?>> params = new ArrayList<Column<?>>();
-        for (Column<?> column : columns) {
-            if (!column.dirty)
+        List<Integer> params = new ArrayList<>();
+        int[] keys = keyColumns(columns);
+        for (int c = 0; c < columns.length; c++) {
+            if (!columns[c].dirty || !Collections.disjoint(columns[c].keyType, KeyType.keys) || columns[c].keyType.contains(KeyType.VERSION))
                 continue;
 
-            if (!Collections.disjoint(column.keyType, KeyType.keys))
-                throw new RuntimeException("Invalid update request for " + column.name + " in " + tableName);
-
             if (!params.isEmpty())
                 sql.append(", ");
+            sql.append(columns[c].name).append("=?");
+            params.add(c);
+        }
 
-            sql.append(column.name).append("=?");
-            params.add(column);
+        int version = versionColumn(columns);
+        if (version >= 0) {
+            if (!params.isEmpty())
+                sql.append(", ");
+            sql.append(columns[version].name).append("=").append(columns[version].name).append("+1");
+        } else if (params.isEmpty()) {
+            //Nothing to change, but the update still has to report whether the row exists.
+            sql.append(columns[keys[0]].name).append("=").append(columns[keys[0]].name);
         }
 
-        // WHERE - must be the primary key.
         sql.append(" WHERE ");
-        int whereIndexStart = params.size();
-        for (Column<?> column : columns) {
-            if (Collections.disjoint(column.keyType, KeyType.keys))
-                continue;
+        for (int i = 0; i < keys.length; i++) {
+            if (i != 0)
+                sql.append(" AND ");
+            sql.append(columns[keys[i]].name).append("=?");
+            params.add(keys[i]);
+        }
+
+        return new CachedRecordData(sql.toString(), null, toArray(params), new int[] {});
+    }
 
-            if (column.dirty)
-                throw new RuntimeException("Dirty " + column.name + " in " + tableName + " update.");
+    /**
+     * Forget the record's cached row, now that it's been written. Within a transaction, other threads may cache
+     * the old row again before the commit, so the table's cache is also cleared when the transaction ends.
+     */
+    private void uncache(ORM8Record<?> record) {
+        RecordCache cache = RecordCache.of(record);
+        if (cache == null)
+            return;
+
+        cache.remove(record);
+        Transaction transaction = connection.currentTransaction();
+        if (transaction != null)
+            transaction.written(cache);
+    }
 
-            if (params.size() != whereIndexStart)
-                sql.append(" AND ");
+    /**
+     * Insert every record inside a single transaction. Runs of records with the same pattern of null columns are
+     * inserted batchSize rows at a time (fewer if they'd need more than MAX_PARAMETERS parameters), with one
+     * multi-row INSERT ... VALUES each. If there's already a transaction open, the inserts become part of it.
+     */
+    <R extends AbstractSingleTableRecord<R>> void insertAll(Iterator<R> records, int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Invalid batch size " + batchSize);
+
+        Transaction transaction = connection.createTransaction();
+        CachedRecordData data = null;
+        List<R> rows = new ArrayList<>();
+        try {
+            while (records.hasNext()) {
+                R record = records.next();
+                CachedRecordData recordData = insertData(record, record.getColumns());
+
+                //Tables too wide to cache their statements build new (but equal) data for each record.
+                boolean sameStatement = data != null && (recordData == data || recordData.sql.equals(data.sql));
+                if (!sameStatement || rows.size() == batchSize || (rows.size() + 1) * data.params.length > MAX_PARAMETERS) {
+                    insertRows(data, rows);
+                    rows.clear();
+                    data = recordData;
+                }
+                rows.add(record);
+            }
 
-            sql.append(column.name).append("=?");
-            params.add(column);
+            insertRows(data, rows);
+            transaction.commit();
+        } finally {
+            if (transaction.result == Transaction.Result.UNKNOWN)
+                transaction.rollback();
+            transaction.close();
         }
+    }
+
+    /**
+     * Insert rows, which all use data's statement, with a single INSERT. The statement runs under the writer lock
+     * inside insertAll's transaction, so its autoincrement keys are consecutive, and the last one gives them all.
+     */
+    private <R extends AbstractSingleTableRecord<R>> void insertRows(CachedRecordData data, List<R> rows) {
+        if (rows.isEmpty())
+            return;
+
+        String tableName = rows.get(0).getTable().getRecordSource().tableName;
+        String sql = rows.size() == 1 ? data.sql : insertSQL(data, rows.size());
+        StatementEvent event = connection.event(tableName, sql);
+        PreparedStatement stmt = connection.prepare(event, sql, data.generatedKeys);
+        try {
+            int index = 1; // IMPORTANT: 1 based.
+            for (R record : rows) {
+                Column<?>[] columns = record.getColumns();
+                for (int c : data.params) {
+                    columns[c].set(stmt, index++);
+                }
+            }
+
+            DbConnection.execute(stmt, event);
+            connection.written(tableName);
+            if (data.keys.length != 0) {
+                long last;
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    if (!rs.next())
+                        throw new DbException("No key was generated by " + sql);
+                    last = rs.getLong(1);
+                }
+                for (int i = 0; i < rows.size(); i++) {
+                    setKey(rows.get(i).getColumns()[data.keys[0]], last - rows.size() + 1 + i);
+                }
+            }
 
-        try (PreparedStatement stmt = connection.connection.prepareStatement(sql.toString())) {
-            int index = 1;
-            for (Column<?> column : params) {
-                column.set(stmt, index++);
+            if (event != null) {
+                event.bindCount = index - 1;
+                event.rows = rows.size();
+                connection.fire(event);
             }
-            stmt.execute();
         } catch (SQLException e) {
-            throw new DbException(e);
+            throw new DbException(sql, e);
+        } finally {
+            connection.releaseStatement(stmt);
+        }
+
+        for (R record : rows) {
+            record.flagAllClean();
+            uncache(record);
         }
     }
 
-    //XXX At present we don't cache queries, though this should be done eventually.
-    void insert(AbstractSingleTableRecord<?> record) {
-        String tableName = record.getTable().getRecordSource().tableName;
-        Column<?>[] columns = record.getColumns();
+    /** data's single row insert, with its VALUES repeated for rows rows */
+    private static String insertSQL(CachedRecordData data, int rows) {
+        String values = data.sql.substring(data.sql.lastIndexOf(" VALUES ") + " VALUES ".length());
+        StringBuilder sql = new StringBuilder(data.sql);
+        for (int i = 1; i < rows; i++) {
+            sql.append(", ").append(values);
+        }
+        return sql.toString();
+    }
+
+    /** Set an autoincrement key (an INTEGER PRIMARY KEY, so an Integer or Long column) to a generated rowid */
+    @SuppressWarnings("unchecked")
+    private static void setKey(Column<?> column, long rowid) {
+        if (column.columnType.dataType == DataType.LONG) {
+            ((Column<Long>) column).set(rowid);
+        } else {
+            ((Column<Integer>) column).set(Math.toIntExact(rowid));
+        }
+        column.flagClean();
+    }
+
+    void beginTransaction(Transaction.Mode mode) {
+        connection.exec("BEGIN " + mode.name());
+    }
+
+    void commitTransaction() {
+        connection.exec("COMMIT");
+    }
+
+    void rollbackTransaction() {
+        connection.exec("ROLLBACK");
+    }
+
+    void savepoint(String name) {
+        connection.exec("SAVEPOINT " + name);
+    }
+
+    void releaseSavepoint(String name) {
+        connection.exec("RELEASE SAVEPOINT " + name);
+    }
+
+    /** Undo the work since the savepoint, and end it. */
+    void rollbackToSavepoint(String name) {
+        connection.exec("ROLLBACK TO SAVEPOINT " + name);
+        connection.exec("RELEASE SAVEPOINT " + name);
+    }
+
+    /** Find (or build) the insert for this record, and check its values can be inserted. */
+    private CachedRecordData insertData(AbstractSingleTableRecord<?> record, Column<?>[] columns) {
+        AbstractTable<?, ?, ?> table = record.getTable();
+        String tableName = table.getRecordSource().tableName;
 
+        int version = versionColumn(columns);
+        if (version >= 0 && columns[version].get() == null)
+            nextVersion(columns[version]);
+
+        //Nullable columns don't get added to the expression at all, so each pattern of nulls is its own statement.
+        long nulls = 0;
+        for (int c = 0; c < columns.length && c < MAX_CACHED_COLUMNS; c++) {
+            if (columns[c].isNullable && columns[c].get() == null)
+                nulls |= 1L << c;
+        }
+
+        CachedRecordData data;
+        if (columns.length > MAX_CACHED_COLUMNS) {
+            data = insertData(tableName, columns);
+        } else {
+            data = table.insertData.computeIfAbsent(nulls, k -> insertData(tableName, columns));
+        }
+
+        for (int c : data.params) {
+            Column<?> param = columns[c];
+            if (!param.isNullable && param.get() == null)
+                throw new DbException("The parameter " + param.name + " of " + tableName + " cannot be null.");
+        }
+
+        return data;
+    }
+
+    /** Build an insert for the record's current pattern of null columns. */
+    private CachedRecordData insertData(String tableName, Column<?>[] columns) {
         StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
         StringBuilder valuesSql = new StringBuilder(") VALUES (");
         List<Integer> insertParams = new ArrayList<>();
         List<Integer> insertKeys = new ArrayList<>();
-
         List<String> insertColumnIndexList = new ArrayList<>();
+
         int args = 0;
         for (int c = 0; c < columns.length; c++) {
             Column<?> column = columns[c];
 
             //Nullable columns don't get added to the expression at all.
-            if (column.keyType.contains(KeyType.NULLABLE) && column.get() == null)
+            if (column.isNullable && column.get() == null)
                 continue; //don't add it at all.
 
             //However autoincrement keys DO get added, because we need the expression to return the value assigned to the key
@@ -236,9 +657,6 @@ public class SQLiteBuilder {
                 valuesSql.append("null");
             } else {
                 valuesSql.append("?");
-            }
-
-            if (!column.keyType.contains(KeyType.AUTOINCREMENT)) {
                 insertParams.add(c);
             }
 
@@ -247,41 +665,99 @@ public class SQLiteBuilder {
 
         sql.append(valuesSql);
         sql.append(")");
-        String insertSql = sql.toString();
 
+        return new CachedRecordData(sql.toString(), insertColumnIndexList.toArray(new String[] {}), toArray(insertParams), toArray(insertKeys));
+    }
+
+    /**
+     * Bind the columns to a cached write statement, run it, and read back any generated keys. Returns the number of
+     * rows changed.
+     */
+    private int execute(String tableName, CachedRecordData data, Column<?>[] columns) {
+        StatementEvent event = connection.event(tableName, data.sql);
+        PreparedStatement stmt = checkout(event, data);
+        connection.writeLock.lock();
         try {
-            try (PreparedStatement stmt = connection.connection.prepareStatement(insertSql, insertColumnIndexList.toArray(new String[] {}))) {
+            bind(data, columns, stmt);
+            DbConnection.execute(stmt, event);
+            int rows = Math.max(stmt.getUpdateCount(), 0);
+            connection.written(tableName);
+            readKeys(data, columns, stmt);
+            if (event != null) {
+                event.bindCount = data.params.length;
+                event.rows = rows;
+                connection.fire(event);
+            }
+            return rows;
+        } catch (SQLException e) {
+            throw new DbException(data.sql, e);
+        } finally {
+            connection.writeLock.unlock();
+            connection.releaseStatement(stmt);
+        }
+    }
 
-                int i = 1; // IMPORTANT: 1 based.
-                for (int c : insertParams) {
-                    Column<?> param = columns[c];
+    private PreparedStatement checkout(StatementEvent event, CachedRecordData data) {
+        try {
+            return connection.getStatement(event, data.statementKey, c -> data.generatedKeys == null || data.generatedKeys.length == 0 ? c.prepareStatement(data.sql) : c.prepareStatement(data.sql, data.generatedKeys));
+        } catch (SQLException e) {
+            throw new DbException(data.sql, e);
+        }
+    }
 
-                    //Autoincrement params have been removed from the list already.
-                    if (param.get() == null && param.isNullable)
-                        continue;
+    private static void bind(CachedRecordData data, Column<?>[] columns, PreparedStatement stmt) {
+        int index = 1; // IMPORTANT: 1 based.
+        for (int c : data.params) {
+            columns[c].set(stmt, index++);
+        }
+    }
 
-                    if (!param.isNullable && param.get() == null)
-                        throw new DbException("The parameter " + param.name + " of " + tableName + " cannot be null.");
+    private static void readKeys(CachedRecordData data, Column<?>[] columns, PreparedStatement stmt) throws SQLException {
+        if (data.keys.length == 0)
+            return;
 
-                    param.set(stmt, i++);
+        try (ResultSet rs = stmt.getGeneratedKeys()) {
+            if (rs.next()) {
+                for (int i = 0; i < data.keys.length; i++) {
+                    columns[data.keys[i]].update(rs, i + 1);
                 }
+            }
+        }
+    }
 
-                stmt.execute();
+    /** The table name for statement events; joins list their tables, separated by + */
+    static String tableName(ORM8Table<?, ?, ?> table) {
+        return String.join("+", tableNames(table));
+    }
 
-                ResultSet rs = stmt.getGeneratedKeys();
-                if (rs.next()) {
-                    // iterate keys
-                    int index = 1;
-                    for (int c : insertKeys) {
-                        Column<?> column = columns[c];
-                        column.update(rs, index++);
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            throw new DbException(insertSql, e);
+    /** The names of the tables in a table or join */
+    static List<String> tableNames(ORM8Table<?, ?, ?> table) {
+        if (table instanceof AbstractTable)
+            return Collections.singletonList(((AbstractTable<?, ?, ?>) table).getRecordSource().tableName);
+
+        List<String> result = new ArrayList<>();
+        for (ORM8Table<?, ?, ?> t : table.allTables()) {
+            result.addAll(tableNames(t));
+        }
+        return result;
+    }
+
+    /** Indexes of the primary key columns */
+    private static int[] keyColumns(Column<?>[] columns) {
+        List<Integer> keys = new ArrayList<>();
+        for (int c = 0; c < columns.length; c++) {
+            if (!Collections.disjoint(columns[c].keyType, KeyType.keys))
+                keys.add(c);
         }
+        return toArray(keys);
+    }
 
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
     }
 
     <R extends ORM8Record<R>> void delete(R helper, SingleTableFilter where) {
@@ -299,14 +775,93 @@ public class SQLiteBuilder {
         	params.addAll(sfb.params);
         }
 
-        PreparedStatement stmt = connection.prepare(sql.toString());
+        execute(helper, qs, sql.toString(), params);
+    }
+
+    /** UPDATE every row matching where, without reading them. Returns the number of rows changed. */
+    <R extends ORM8Record<R>> int update(R helper, Assignment assignment, SingleTableFilter where) {
+        if (helper == null)
+            throw new DbException("Update without a table is not supported.");
+
+        QuerySource<R> qs = new QuerySource<>(helper, QuerySource.NO_ALIAS);
+        if (!(qs.root instanceof AbstractTable))
+            throw new DbException("Only a single table can be updated.");
+        String tableName = ((AbstractTable<?, ?, ?>) qs.root).getRecordSource().tableName;
+
+        List<SQLFilterParam<?>> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+        Set<Column<?>> assigned = new HashSet<>();
+        for (Assignment.ColumnValue set : assignment.sets) {
+            if (!Collections.disjoint(set.column.keyType, KeyType.keys))
+                throw new DbException("Invalid update request for " + set.column.name + " in " + tableName);
+            if (set.column.record.getTable() != qs.root)
+                throw new DbException(set.column.name + " isn't a column of " + tableName);
+            if (!assigned.add(set.column))
+                throw new DbException(set.column.name + " is set twice in an update of " + tableName);
+
+            if (assigned.size() > 1)
+                sql.append(", ");
+            sql.append(set.column.name).append("=").append(set.expression);
+            if (set.param != null)
+                params.add(set.param);
+        }
+
+        //The rows have changed, so records read before now are out of date.
+        int version = versionColumn(helper.getColumns());
+        if (version >= 0 && !assigned.contains(helper.getColumns()[version])) {
+            String name = helper.getColumns()[version].name;
+            sql.append(", ").append(name).append("=").append(name).append("+1");
+        }
 
-        int index = 0;
-        for (SQLFilterParam<?> param : params) {
-            param.set(stmt, ++index); //PreparedStatement params are 1-based
+        if (where != null) {
+            sql.append(" WHERE ");
+            SQLFilterBuilder sfb = qs.toSQL(where);
+            sql.append(sfb.parts);
+            params.addAll(sfb.params);
         }
 
-        connection.runQuery(stmt);
+        return execute(helper, qs, sql.toString(), params);
+    }
+
+    /**
+     * Run a statement which changes any number of the table's rows, so its cached rows are all forgotten. Returns
+     * the number of rows changed.
+     */
+    private <R extends ORM8Record<R>> int execute(R helper, QuerySource<R> qs, String sql, List<SQLFilterParam<?>> params) {
+        StatementEvent event = connection.event(tableName(qs.root), sql);
+        PreparedStatement stmt = connection.prepare(event, sql);
+        connection.writeLock.lock();
+        try {
+            int index = 0;
+            for (SQLFilterParam<?> param : params) {
+                param.set(stmt, ++index); //PreparedStatement params are 1-based
+            }
+
+            DbConnection.execute(stmt, event);
+            int rows = Math.max(stmt.getUpdateCount(), 0);
+            for (String table : tableNames(qs.root)) {
+                connection.written(table);
+            }
+            if (event != null) {
+                event.bindCount = params.size();
+                event.rows = rows;
+                connection.fire(event);
+            }
+
+            RecordCache cache = RecordCache.of(helper);
+            if (cache != null) {
+                cache.clear();
+                Transaction transaction = connection.currentTransaction();
+                if (transaction != null)
+                    transaction.written(cache);
+            }
+            return rows;
+        } catch (SQLException e) {
+            throw new DbException(sql, e);
+        } finally {
+            connection.writeLock.unlock();
+            connection.releaseStatement(stmt);
+        }
     }
     
     public static class SQLBuilder {
@@ -341,6 +896,32 @@ public class SQLiteBuilder {
     }
 
     <R extends ORM8Record<R>> SingleQuery query(SingleTableFilter where, R helper, Integer top, SelectColumns<R> columns, OrderFn<R> order) {
+        return query(where, helper, top, columns, order, null);
+    }
+
+    /** The SQL for a select, with the parameters to bind to it, in order. */
+    static class QuerySQL {
+        final String table;
+        /** The tables read, for ResultCache */
+        final List<String> tables;
+        final String sql;
+        final List<SQLFilterParam<?>> params;
+
+        QuerySQL(List<String> tables, String sql, List<SQLFilterParam<?>> params) {
+            this.table = String.join("+", tables);
+            this.tables = tables;
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    /** As query, asking the driver to fetch fetchSize rows at a time (null for the driver's default). */
+    <R extends ORM8Record<R>> SingleQuery query(SingleTableFilter where, R helper, Integer top, SelectColumns<R> columns, OrderFn<R> order, Integer fetchSize) {
+        return query(selectSQL(where, helper, top, columns, order), fetchSize);
+    }
+
+    /** Build the SQL for a select, without preparing it. */
+    <R extends ORM8Record<R>> QuerySQL selectSQL(SingleTableFilter where, R helper, Integer top, SelectColumns<R> columns, OrderFn<R> order) {
     	if (helper == null)
     		throw new DbException("Count without a table is not supported.");
     	
@@ -348,7 +929,8 @@ public class SQLiteBuilder {
 
         List<SQLFilterParam<?>> params = new ArrayList<>();
 
-        String columnSql = qs.toSQL(columns);
+        SelectedColumns selected = columns == null ? null : columns.get(helper);
+        String columnSql = qs.toSQL(selected);
         
         SQLFilterBuilder fb = qs.fromClause();
         SQLBuilder sql = new SQLBuilder("SELECT").add(columnSql).add(fb.parts);
@@ -360,6 +942,16 @@ public class SQLiteBuilder {
             sql.add(sfb.parts);
             params.addAll(sfb.params);
         }
+
+        if (selected != null && selected.aggregates != null && selected.columns.length != 0) {
+            sql.add("GROUP BY");
+            for (int i = 0; i < selected.columns.length; i++) {
+                if (i != 0) {
+                    sql.add(",");
+                }
+                sql.add(qs.columnSQL(selected.columns[i]));
+            }
+        }
         
         if (order != null) {
             OrderImpl orderCfg = order.f(helper);
@@ -391,30 +983,53 @@ public class SQLiteBuilder {
             sql.add("LIMIT").add(top);
         }
 
+        return new QuerySQL(tableNames(qs.root), sql.toString(), params);
+    }
+
+    SingleQuery query(QuerySQL query, Integer fetchSize) {
+        return query(query, fetchSize, null);
+    }
+
+    /** Run a select, taking compiled query parameters from args. */
+    SingleQuery query(QuerySQL query, Integer fetchSize, Object[] args) {
+        String sql = query.sql;
+        List<SQLFilterParam<?>> params = query.params;
+        StatementEvent event = connection.event(query.table, sql);
+        PreparedStatement stmt = connection.prepareRead(event, sql);
         try {
-            System.err.println(sql.toString());
-            PreparedStatement stmt = connection.prepare(sql.toString());
+            //Cached statements keep their fetch size, so always set it.
+            stmt.setFetchSize(fetchSize == null ? 0 : fetchSize);
 
             int index = 0;
 			try {
 				for (SQLFilterParam<?> param : params) {
-	                param.set(stmt, ++index); //PreparedStatement params are 1-based
+	                param.set(stmt, ++index, args); //PreparedStatement params are 1-based
 	            }
 			} catch (ORM8RuntimeException e) {
-                throw new ORM8RuntimeException("Error preparing query for [" + qs.fromClause() + "] : " + sql, e);
+                throw new ORM8RuntimeException("Error preparing query for [" + query.table + "] : " + sql, e);
 			}
+        } catch (Throwable t) {
+            connection.releaseStatement(stmt);
+            throw new DbException(sql, t);
+        }
 
-            SingleQuery sq = connection.runQuery(stmt);
-            if (sq.rs == null)
-                return null;
+        if (event != null)
+            event.bindCount = params.size();
 
-            return sq;
+        //runQuery hands the statement back to the cache on failure; otherwise the SingleQuery owns it.
+        try {
+            return connection.runQuery(stmt, event);
         } catch (Throwable t) {
-            throw new DbException(sql.toString(), t);
+            throw new DbException(sql, t);
         }
     }
 
     <R extends ORM8Record<R>> int countAll(R helper, SingleTableFilter where) {
+        return countAll(helper, where, null);
+    }
+
+    /** Count the rows matching where, stopping at limit (null for no limit) with a limited subquery */
+    <R extends ORM8Record<R>> int countAll(R helper, SingleTableFilter where, Integer limit) {
         if (helper == null)
             throw new DbException("CountAll without a table is not supported.");
 
@@ -422,7 +1037,7 @@ public class SQLiteBuilder {
 
         List<SQLFilterParam<?>> params = new ArrayList<>();
         SQLFilterBuilder fromBuilder = qs.fromClause();
-        SQLBuilder sql = new SQLBuilder("SELECT COUNT(*)").add(fromBuilder.parts);
+        SQLBuilder sql = new SQLBuilder(limit == null ? "SELECT COUNT(*)" : "SELECT COUNT(*) FROM (SELECT 1").add(fromBuilder.parts);
         params.addAll(fromBuilder.params);
 
         if (where != null) {
@@ -432,13 +1047,31 @@ public class SQLiteBuilder {
             params.addAll(sfb.params);
         }
 
-        try (PreparedStatement ps = connection.connection.prepareStatement(sql.toString())) {
+        if (limit != null)
+            sql.add("LIMIT").add(limit).add(")");
+
+        QuerySQL query = new QuerySQL(tableNames(qs.root), sql.toString(), params);
+        return ResultCache.get(connection, query, () -> count(query));
+    }
+
+    private int count(QuerySQL query) {
+        String sql = query.sql;
+        List<SQLFilterParam<?>> params = query.params;
+        StatementEvent event = connection.event(query.table, sql);
+        PreparedStatement ps = connection.prepareRead(event, sql);
+        try {
             int index = 0;
             for (SQLFilterParam<?> param : params) {
                 param.set(ps, ++index); //PreparedStatement params are 1-based
             }
 
-            if (!ps.execute())
+            boolean hasResults = DbConnection.execute(ps, event);
+            if (event != null) {
+                event.bindCount = params.size();
+                event.rows = 1;
+                connection.fire(event);
+            }
+            if (!hasResults)
                 return 0;
 
             try (ResultSet rs = ps.getResultSet()) {
@@ -449,6 +1082,8 @@ public class SQLiteBuilder {
             }
         } catch (SQLException e) {
             throw new DbException(e);
+        } finally {
+            connection.releaseStatement(ps);
         }
     }
 
@@ -531,30 +1166,35 @@ public class SQLiteBuilder {
             case MAX:
                 sb.append(fn.name()).append("(").append(columnSQL(column)).append(")");
                 break;
+            case COUNT:
+                sb.append("COUNT(").append(column == null ? "*" : columnSQL(column)).append(")");
+                break;
             default:
                 throw new DbException("Unsupported column aggregate " + fn);
             }
         }
 
-        String toSQL(SelectColumns<R> columns) {
-            if (columns == null)
+        String toSQL(SelectedColumns sc) {
+            if (sc == null)
                 return "*";
 
-            StringBuilder sb = new StringBuilder();
-            SelectedColumns sc = columns.get(helper);
-            if (sc.columns == null) {
-                //FIXME this is corny as heck.
-                aggregate(sb, sc.aggregate.fn, sc.aggregate.column);
-            } else {
-                Column<?>[] columnList = sc.columns;
-                if (columnList == null || columnList.length == 0)
-                    return "*";
+            Column<?>[] columnList = sc.columns;
+            if (sc.aggregates == null && (columnList == null || columnList.length == 0))
+                return "*";
 
-                for (int i = 0; i < columnList.length; i++) {
-                    if (i != 0) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < columnList.length; i++) {
+                if (i != 0) {
+                    sb.append(",");
+                }
+                sb.append(columnSQL(columnList[i]));
+            }
+            if (sc.aggregates != null) {
+                for (Aggregate<?> aggregate : sc.aggregates) {
+                    if (sb.length() != 0) {
                         sb.append(",");
                     }
-                    sb.append(columnSQL(columnList[i]));
+                    aggregate(sb, aggregate.fn, aggregate.column);
                 }
             }
             return sb.toString();
@@ -581,6 +1221,8 @@ public class SQLiteBuilder {
                 binaryToSQL((BinarySTFilter<?>) where, parts, params);
             } else if (where instanceof LogicSTFilter) {
                 logicToSQL((LogicSTFilter) where, parts, params);
+            } else if (where instanceof InSTFilter) {
+                inToSQL((InSTFilter<?>) where, parts, params);
             } else if (where instanceof ColumnSTFilter) {
                 columnToSQL((ColumnSTFilter<?>) where, parts, params);
             } else {
@@ -597,6 +1239,13 @@ public class SQLiteBuilder {
                 buildSQL(filter.getRight(), parts, params);
                 parts.add(")");
                 break;
+            case OR:
+                parts.add("(");
+                buildSQL(filter.getLeft(), parts, params);
+                parts.add(") OR (");
+                buildSQL(filter.getRight(), parts, params);
+                parts.add(")");
+                break;
             default:
                 throw new IllegalStateException("Unknown logic filter " + filter.getClause());
             }
@@ -635,6 +1284,16 @@ public class SQLiteBuilder {
             params.add(filter.createFilterParam());
         }
 
+        <T> void inToSQL(InSTFilter<T> filter, SQLBuilder parts, List<SQLFilterParam<?>> params) {
+            addColumn(parts, filter.getColumn());
+            StringBuilder sb = new StringBuilder("IN (");
+            for (int i = 0; i < filter.getValues().size(); i++) {
+                sb.append(i == 0 ? "?" : ",?");
+                params.add(new SQLFilterParam<T>(filter.getColumn(), filter.getValues().get(i)));
+            }
+            parts.add(sb.append(")").toString());
+        }
+
         void columnToSQL(ColumnSTFilter<?> filter, SQLBuilder parts, List<SQLFilterParam<?>> params) {
             switch (filter.getClause()) {
             case NOTNULL:
@@ -1,16 +1,21 @@
 package net.benmann.orm8.db;
 
 public class SelectedColumns {
-    final Aggregate<?> aggregate;
+    final Aggregate<?>[] aggregates;
 	final Column<?>[] columns;
 	
 	public SelectedColumns(Column<?>... columns) {
 		this.columns = columns;
-		aggregate = null;
+		aggregates = null;
 	}
 	
     public SelectedColumns(Aggregate<?> aggregate) {
-		columns = null;
-		this.aggregate = aggregate;
+        this(new Column<?>[0], new Aggregate<?>[] { aggregate });
 	}
-}
\ No newline at end of file
+
+    /** The columns, then the aggregates, grouped by the columns */
+    SelectedColumns(Column<?>[] columns, Aggregate<?>[] aggregates) {
+        this.columns = columns;
+        this.aggregates = aggregates;
+    }
+}
@@ -8,8 +8,21 @@ import java.sql.SQLException;
 public class SingleQuery implements Closeable {
     final PreparedStatement ps;
     public final ResultSet rs;
+    private final DbConnection<?> connection;
+    private final StatementEvent event;
+    private boolean closed = false;
 
     public SingleQuery(PreparedStatement ps) {
+        this(null, ps, null);
+    }
+
+    /**
+     * A query on a statement checked out of connection's statement cache; close() hands it back, and sends event
+     * (if any) to the connection's listeners.
+     */
+    SingleQuery(DbConnection<?> connection, PreparedStatement ps, StatementEvent event) {
+        this.connection = connection;
+        this.event = event;
         this.ps = ps;
         try {
             this.rs = ps.getResultSet();
@@ -18,10 +31,27 @@ public class SingleQuery implements Closeable {
         }
     }
 
+    /** Count a row read from the result set, for the statement's event */
+    void rowRead() {
+        if (event != null)
+            event.rows++;
+    }
+
     @Override public void close() {
+        if (closed)
+            return;
+        closed = true;
+
+        if (event != null)
+            connection.fire(event);
+
         try {
             rs.close();
-            ps.close();
+            if (connection == null) {
+                ps.close();
+            } else {
+                connection.releaseStatement(ps);
+            }
         } catch (SQLException e) {
             throw new DbException(e);
         }
@@ -1,5 +1,10 @@
 package net.benmann.orm8.db;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
 public abstract class SingleTableFilter {
     public static class ColumnSTFilter<T> extends SingleTableFilter {
         protected AbstractSingleTableRecord<?> record;
@@ -22,18 +27,63 @@ public abstract class SingleTableFilter {
 
     public static class BinarySTFilter<T> extends ColumnSTFilter<T> {
         protected T param;
+        protected QueryParam<T> slot;
 
         public BinarySTFilter(CLAUSE clause, AbstractSingleTableRecord<?> record, Column<T> column, T param) {
             super(clause, record, column);
             this.param = param;
         }
+
+        /** A comparison with a compiled query parameter */
+        public BinarySTFilter(CLAUSE clause, AbstractSingleTableRecord<?> record, Column<T> column, QueryParam<T> slot) {
+            super(clause, record, column);
+            this.slot = slot;
+        }
         
         public T getParam() {
         	return param;
         }
 
         SQLFilterParam<T> createFilterParam() {
-            return new SQLFilterParam<T>(getColumn(), getParam());
+            return new SQLFilterParam<T>(getColumn(), getParam(), slot);
+        }
+
+        @Override int parameterCount() {
+            return 1;
+        }
+    }
+
+    /** column IN (values) */
+    public static class InSTFilter<T> extends ColumnSTFilter<T> {
+        protected final List<T> values;
+
+        /** Nulls never match, and duplicates don't change the result, so neither is kept. */
+        public InSTFilter(AbstractSingleTableRecord<?> record, Column<T> column, Collection<? extends T> values) {
+            super(CLAUSE.IN, record, column);
+            LinkedHashSet<T> distinct = new LinkedHashSet<>(values);
+            distinct.remove(null);
+            this.values = new ArrayList<>(distinct);
+        }
+
+        public List<T> getValues() {
+            return values;
+        }
+
+        @Override int parameterCount() {
+            return values.size();
+        }
+
+        @Override InSTFilter<?> largestIn() {
+            return this;
+        }
+
+        /** This filter, as a list of filters with at most size values each */
+        List<InSTFilter<T>> chunks(int size) {
+            List<InSTFilter<T>> result = new ArrayList<>();
+            for (int i = 0; i < values.size(); i += size) {
+                result.add(new InSTFilter<T>(record, column, values.subList(i, Math.min(values.size(), i + size))));
+            }
+            return result;
         }
     }
 
@@ -84,6 +134,30 @@ public abstract class SingleTableFilter {
         public SingleTableFilter getRight() {
         	return b;
         }
+
+        @Override int parameterCount() {
+            return a.parameterCount() + b.parameterCount();
+        }
+
+        @Override InSTFilter<?> largestIn() {
+            //Records matching the other side of an OR would match every chunk.
+            if (clause == CLAUSE.OR)
+                return null;
+
+            InSTFilter<?> left = a.largestIn();
+            InSTFilter<?> right = b.largestIn();
+            if (left == null)
+                return right;
+            if (right == null)
+                return left;
+            return left.values.size() >= right.values.size() ? left : right;
+        }
+
+        @Override SingleTableFilter replace(SingleTableFilter target, SingleTableFilter replacement) {
+            if (this == target)
+                return replacement;
+            return new LogicSTFilter(clause, a.replace(target, replacement), b.replace(target, replacement));
+        }
     }
 
     protected final CLAUSE clause;
@@ -99,10 +173,52 @@ public abstract class SingleTableFilter {
     //    public abstract String getSingleTableName();
     public abstract ORM8Table<?, ?, ?> getTable();
 
+    /** The number of values this filter binds to the statement */
+    int parameterCount() {
+        return 0;
+    }
+
+    /** The IN filter with the most values within this one, or null */
+    InSTFilter<?> largestIn() {
+        return null;
+    }
+
+    /** A copy of this filter with target (somewhere within it) swapped for replacement */
+    SingleTableFilter replace(SingleTableFilter target, SingleTableFilter replacement) {
+        return this == target ? replacement : this;
+    }
+
+    /**
+     * This filter as a list of filters which each bind at most maxParameters values, by dividing its largest IN
+     * list between them. Records match this filter if they match any of the results.
+     */
+    List<SingleTableFilter> split(int maxParameters) {
+        List<SingleTableFilter> result = new ArrayList<>();
+        int count = parameterCount();
+        if (count <= maxParameters) {
+            result.add(this);
+            return result;
+        }
+
+        InSTFilter<?> largest = largestIn();
+        int size = largest == null ? 0 : maxParameters - (count - largest.values.size());
+        if (size < 1)
+            throw new DbException("The filter has " + count + " parameters, more than the " + maxParameters + " allowed, and no IN list that can be split.");
+
+        for (InSTFilter<?> chunk : largest.chunks(size)) {
+            result.add(replace(largest, chunk));
+        }
+        return result;
+    }
+
     public SingleTableFilter and(SingleTableFilter other) {
         return new LogicSTFilter(CLAUSE.AND, this, other);
     }
 
+    public SingleTableFilter or(SingleTableFilter other) {
+        return new LogicSTFilter(CLAUSE.OR, this, other);
+    }
+
     public SingleTableFilter and(SingleTableFilter other1, SingleTableFilter other2, SingleTableFilter... others) {
         SingleTableFilter result = new LogicSTFilter(CLAUSE.AND, this, other1);
         result = result.and(other2);
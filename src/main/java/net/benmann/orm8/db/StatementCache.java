@@ -0,0 +1,106 @@
+package net.benmann.orm8.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.benmann.orm8.db.DbConnection.CreateStatementFn;
+
+/**
+ * A bounded, least recently used cache of idle prepared statements, keyed by their SQL text.
+ * Statements are checked out with get() and handed back with release(); a statement is never
+ * shared between two open result sets. If the same SQL is requested while its statement is
+ * still in use, a second statement is prepared, and whichever is released last is closed.
+ */
+class StatementCache {
+    private final Map<String, PreparedStatement> idle;
+    private final Map<PreparedStatement, String> inUse = new IdentityHashMap<>();
+    private int maxSize;
+
+    StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+        idle = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= StatementCache.this.maxSize)
+                    return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /** The cache key for a statement; generated key columns change the statement, so they're part of it. */
+    static String key(String sql, String... generatedKeys) {
+        if (generatedKeys == null || generatedKeys.length == 0)
+            return sql;
+        return sql + '\u0000' + String.join(",", generatedKeys);
+    }
+
+    /**
+     * Check out an idle statement for this key, or create one with fn.
+     */
+    synchronized PreparedStatement get(String key, CreateStatementFn fn, java.sql.Connection connection) throws SQLException {
+        PreparedStatement result = idle.remove(key);
+        if (result == null || result.isClosed())
+            result = fn.f(connection);
+        inUse.put(result, key);
+        return result;
+    }
+
+    /**
+     * Return a statement to the cache. Its parameters are cleared rather than the statement being closed.
+     */
+    synchronized void release(PreparedStatement ps) {
+        String key = inUse.remove(ps);
+        if (key == null || maxSize <= 0 || idle.containsKey(key)) {
+            closeQuietly(ps);
+            return;
+        }
+
+        try {
+            ps.clearParameters();
+        } catch (SQLException e) {
+            closeQuietly(ps);
+            return;
+        }
+        idle.put(key, ps);
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        Iterator<PreparedStatement> it = idle.values().iterator();
+        while (idle.size() > maxSize && it.hasNext()) {
+            closeQuietly(it.next());
+            it.remove();
+        }
+    }
+
+    synchronized int size() {
+        return idle.size();
+    }
+
+    /** Close every statement, idle or not. */
+    synchronized void close() {
+        for (PreparedStatement ps : idle.values()) {
+            closeQuietly(ps);
+        }
+        for (PreparedStatement ps : inUse.keySet()) {
+            closeQuietly(ps);
+        }
+        idle.clear();
+        inUse.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            //Nothing useful to do; the statement is being discarded anyway.
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package net.benmann.orm8.db;
+
+import java.util.regex.Pattern;
+
+/**
+ * What happened when a statement ran. Events are only created when a DbConnection has listeners.
+ * For selects, the event is sent when the results are closed, so that rows is the number of rows actually read.
+ */
+public class StatementEvent {
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    final String table;
+    final String sql;
+    private String fingerprint = null;
+    int bindCount = 0;
+    boolean cacheHit = false;
+    long prepareNanos = 0;
+    long executeNanos = 0;
+    long rows = 0;
+
+    StatementEvent(String table, String sql) {
+        this.table = table;
+        this.sql = sql;
+    }
+
+    /** The table (or joined tables, separated with +) the statement ran against; null for arbitrary SQL. */
+    public String getTable() {
+        return table;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * The shape of the statement: its SQL with literal values replaced with ?, so that statements which differ only
+     * in their values have the same fingerprint.
+     */
+    public String getFingerprint() {
+        if (fingerprint == null)
+            fingerprint = fingerprint(sql);
+        return fingerprint;
+    }
+
+    static String fingerprint(String sql) {
+        String result = STRING_LITERAL.matcher(sql).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        return WHITESPACE.matcher(result).replaceAll(" ").trim();
+    }
+
+    /** The number of bound parameters */
+    public int getBindCount() {
+        return bindCount;
+    }
+
+    /** True if the prepared statement was reused from the statement cache */
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    /** Time spent preparing the statement; 0 for a cache hit */
+    public long getPrepareNanos() {
+        return prepareNanos;
+    }
+
+    /** Time spent executing the statement. For selects, this doesn't include reading the rows. */
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    /** Rows read by a select, or changed by any other statement */
+    public long getRows() {
+        return rows;
+    }
+
+    @Override public String toString() {
+        return getFingerprint() + " [" + table + "] binds=" + bindCount + " hit=" + cacheHit + " prepare=" + prepareNanos + "ns execute=" + executeNanos + "ns rows=" + rows;
+    }
+}
@@ -1,12 +1,15 @@
 package net.benmann.orm8.db;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
- * TODO
- * Executes an SQL BEGIN TRANSACTION; enclosing ORM8 commands then run in this context; executes an END TRANSACTION
- * at the end of the block.
- * 
+ * Executes an SQL BEGIN TRANSACTION; enclosing ORM8 commands then run in this context; commit() or rollback()
+ * ends the transaction.
+ *
  * Likely we will move on to a different pattern eventually though, such as:
- * 
+ *
  * <pre>
  * db.withTransaction(() -> {
  *     try {
@@ -18,9 +21,9 @@ package net.benmann.orm8.db;
  *     return Transaction.COMMIT;
  * });
  * </pre>
- * 
+ *
  * which may be a better compile-time story than the following
- * 
+ *
  * <pre>
  * try (Transaction t = db.createTransaction()) {
  *     db.doSomething();
@@ -30,25 +33,136 @@ package net.benmann.orm8.db;
  *     t.rollback();
  * }
  * </pre>
- * 
- * which cannot ensure you actually called commit or rollback until runtime.
- * 
- * TODO transactions started within this one should become part of the enclosing transaction (and manage state accordingly)
+ *
+ * which cannot ensure you actually called commit or rollback until runtime. A transaction closed without either
+ * is rolled back, and then reported as a programming error.
+ *
+ * Transactions started within this one become part of the enclosing transaction, as a SAVEPOINT: rolling back the
+ * inner transaction only undoes its own work, and nothing is durable until the outermost transaction commits.
+ *
+ * A transaction belongs to the thread which created it. While it's open, other threads' transactions and writes on
+ * the connection wait for it to end, rather than joining it.
  */
 public class Transaction implements AutoCloseable {
     public enum Result {
         COMMIT, ROLLBACK, UNKNOWN
     }
 
+    public static final Result COMMIT = Result.COMMIT;
+    public static final Result ROLLBACK = Result.ROLLBACK;
+
+    /**
+     * How the outermost transaction acquires its locks. DEFERRED takes the write lock at the first write;
+     * IMMEDIATE takes it at BEGIN, so a writer fails (or waits) up front instead of part way through;
+     * EXCLUSIVE also keeps out readers. Nested transactions share the enclosing transaction's mode.
+     */
+    public enum Mode {
+        DEFERRED, IMMEDIATE, EXCLUSIVE
+    }
+
     protected Result result = Result.UNKNOWN;
+    private final DbConnection<?> connection;
+    private final Transaction parent;
+    private final int depth;
+    private boolean closed = false;
+    /** Record caches of the tables written in the outermost transaction, to clear when it ends */
+    private final Set<RecordCache> writtenCaches;
+    /** Tables written in the outermost transaction, whose versions change again when it ends */
+    private final Set<String> writtenTables;
 
     public Transaction(DbConnection<?> connection) {
+        this(connection, Mode.DEFERRED);
+    }
+
+    public Transaction(DbConnection<?> connection, Mode mode) {
+        this.connection = connection;
+        parent = connection.currentTransaction();
+        depth = parent == null ? 0 : parent.depth + 1;
+        writtenCaches = parent == null ? Collections.newSetFromMap(new ConcurrentHashMap<>()) : parent.writtenCaches;
+        writtenTables = parent == null ? Collections.newSetFromMap(new ConcurrentHashMap<>()) : parent.writtenTables;
+        if (parent == null) {
+            //Other threads' transactions and writes wait until this one ends.
+            connection.writeLock.lock();
+            try {
+                connection.createBuilder().beginTransaction(mode);
+            } catch (RuntimeException e) {
+                connection.writeLock.unlock();
+                throw e;
+            }
+        } else {
+            connection.createBuilder().savepoint(savepoint());
+        }
+        connection.setCurrentTransaction(this);
+    }
+
+    private String savepoint() {
+        return "orm8_" + depth;
+    }
+
+    /** True if this transaction is within another */
+    public boolean isNested() {
+        return parent != null;
     }
 
     public void setResult(Result r) {
         if (result != Result.UNKNOWN)
             throw new IllegalStateException("Attempt to change transaction state from " + result + " to " + r);
+
+        if (connection.currentTransaction() != this)
+            throw new IllegalStateException("Attempt to " + r + " a transaction while a nested transaction is open, or from another thread.");
+
+        if (r == Result.UNKNOWN)
+            throw new IllegalStateException("Attempt to change transaction state to " + r);
+
         result = r;
+        try {
+            end(r);
+        } catch (RuntimeException e) {
+            //A failed commit (eg the db is busy) leaves the transaction open; don't leave it that way.
+            if (r == Result.COMMIT) {
+                result = Result.ROLLBACK;
+                end(Result.ROLLBACK);
+            }
+            throw e;
+        } finally {
+            connection.setCurrentTransaction(parent);
+            if (parent == null) {
+                for (RecordCache cache : writtenCaches) {
+                    cache.clear();
+                }
+                for (String table : writtenTables) {
+                    connection.written(table);
+                }
+                connection.writeLock.unlock();
+            }
+        }
+    }
+
+    private void end(Result r) {
+        SQLiteBuilder builder = connection.createBuilder();
+        if (r == Result.COMMIT) {
+            if (parent == null) {
+                builder.commitTransaction();
+            } else {
+                builder.releaseSavepoint(savepoint());
+            }
+        } else {
+            if (parent == null) {
+                builder.rollbackTransaction();
+            } else {
+                builder.rollbackToSavepoint(savepoint());
+            }
+        }
+    }
+
+    /** Note a cached table written within this transaction */
+    void written(RecordCache cache) {
+        writtenCaches.add(cache);
+    }
+
+    /** Note a table written within this transaction */
+    void written(String table) {
+        writtenTables.add(table);
     }
 
     public void commit() {
@@ -61,12 +175,19 @@ public class Transaction implements AutoCloseable {
 
     //If we close this object and you haven't called commit or rollback, it's considered a programming error.
     @Override public void close() {
-        if (result == Result.UNKNOWN)
+        if (closed)
+            return;
+        closed = true;
+
+        if (result == Result.UNKNOWN) {
+            rollback();
             throw new IllegalStateException("The transaction was not closed.");
+        }
     }
 
-    //If the transaction is garbage collected, run close.
+    //If the transaction is garbage collected, it's too late to roll it back on this thread.
     @Override public void finalize() {
-        close();
+        if (!closed && result == Result.UNKNOWN)
+            throw new IllegalStateException("The transaction was not closed.");
     }
-}
\ No newline at end of file
+}
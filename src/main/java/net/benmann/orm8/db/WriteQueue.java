@@ -0,0 +1,195 @@
+package net.benmann.orm8.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs writes from any number of threads on one writer thread, committing them in batches: one transaction (and so
+ * one sync to disk) per batch rather than per write. Each write's future completes once its batch has committed.
+ *
+ * <pre>
+ * try (WriteQueue writes = db.writeQueue(500, 1, TimeUnit.MILLISECONDS)) {
+ *     writes.insert(user).join();
+ * }
+ * </pre>
+ *
+ * A batch is whatever has been queued by the time the writer is free, plus anything queued within linger of its
+ * first write, up to maxBatchSize writes. Each write runs in its own savepoint, so a failed write only fails its own
+ * future; if the commit fails, every write in the batch fails. Writes made directly on other threads wait while a
+ * batch is being written, as they would for any other transaction.
+ */
+public class WriteQueue implements AutoCloseable {
+    private static class Write<T> {
+        final Supplier<T> action;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        /** The action's result, for the future once the batch commits */
+        T result;
+
+        Write(Supplier<T> action) {
+            this.action = action;
+        }
+
+        void run() {
+            result = action.get();
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+    }
+
+    /** Queued by close, to stop the writer once the writes before it are done */
+    private static final Write<Void> STOP = new Write<>(null);
+
+    private final DbConnection<?> connection;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<Write<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    /** Set (with the queue's lock held) once nothing more may be queued */
+    private boolean closed = false;
+
+    WriteQueue(DbConnection<?> connection, int maxBatchSize, long linger, TimeUnit unit) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Invalid batch size " + maxBatchSize);
+
+        this.connection = connection;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = unit.toNanos(linger);
+        this.writer = new Thread(this::run, "orm8-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public CompletableFuture<Void> insert(AbstractSingleTableRecord<?> record) {
+        return submit(record::insert);
+    }
+
+    /** Completes with update()'s result: false if the record's VERSION is out of date, and nothing was written */
+    public CompletableFuture<Boolean> update(AbstractSingleTableRecord<?> record) {
+        return enqueue(record::update);
+    }
+
+    public CompletableFuture<Void> delete(AbstractSingleTableRecord<?> record) {
+        return submit(record::delete);
+    }
+
+    /** Queue any write, such as a Query.delete or several dependent inserts, to run in the next batch */
+    public CompletableFuture<Void> submit(Runnable write) {
+        return enqueue(() -> {
+            write.run();
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> enqueue(Supplier<T> action) {
+        Write<T> write = new Write<>(action);
+        synchronized (queue) {
+            if (closed)
+                throw new IllegalStateException("The write queue is closed.");
+            queue.add(write);
+        }
+        return write.future;
+    }
+
+    private void run() {
+        List<Write<?>> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                Write<?> first = queue.take();
+                if (first == STOP)
+                    break;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    long wait = deadline - System.nanoTime();
+                    Write<?> next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null)
+                        break;
+                    if (next == STOP) {
+                        stopping = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+
+            write(batch);
+            batch.clear();
+        }
+
+        //If the writer was interrupted, nothing more can be written.
+        synchronized (queue) {
+            closed = true;
+        }
+        failQueued();
+    }
+
+    /** Fail any writes left in the queue once the writer has stopped */
+    private void failQueued() {
+        Write<?> write;
+        while ((write = queue.poll()) != null) {
+            if (write != STOP)
+                write.future.completeExceptionally(new IllegalStateException("The write queue is closed."));
+        }
+    }
+
+    /** Run a batch in one transaction, and complete the futures of the writes which committed */
+    private void write(List<Write<?>> batch) {
+        if (batch.isEmpty())
+            return;
+
+        List<Write<?>> written = new ArrayList<>();
+        try (Transaction transaction = connection.createTransaction(Transaction.Mode.IMMEDIATE)) {
+            for (Write<?> write : batch) {
+                try (Transaction savepoint = connection.createTransaction()) {
+                    try {
+                        write.run();
+                        savepoint.commit();
+                        written.add(write);
+                    } catch (Throwable t) {
+                        savepoint.rollback();
+                        write.future.completeExceptionally(t);
+                    }
+                }
+            }
+            transaction.commit();
+        } catch (Throwable t) {
+            //Writes which already failed keep their own exception.
+            for (Write<?> write : batch) {
+                write.future.completeExceptionally(t);
+            }
+            return;
+        }
+
+        for (Write<?> write : written) {
+            write.complete();
+        }
+    }
+
+    /** Write everything already queued, then stop the writer thread. */
+    @Override public void close() {
+        synchronized (queue) {
+            if (closed)
+                return;
+            closed = true;
+            queue.add(STOP);
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        failQueued();
+    }
+}
@@ -1,5 +1,6 @@
 package net.benmann.orm8.db.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -12,7 +13,19 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
@@ -21,13 +34,28 @@ import org.junit.Test;
 
 import net.benmann.orm8.db.AbstractSingleTableRecord;
 import net.benmann.orm8.db.AbstractTable;
+import net.benmann.orm8.db.Aggregate;
 import net.benmann.orm8.db.Column.IntegerColumn;
+import net.benmann.orm8.db.Column.LongColumn;
 import net.benmann.orm8.db.Column.StringColumn;
+import net.benmann.orm8.db.ColumnBatch;
+import net.benmann.orm8.db.ColumnBatch.StringVector;
+import net.benmann.orm8.db.ColumnarResults;
+import net.benmann.orm8.db.CompiledQuery;
 import net.benmann.orm8.db.DbConnection;
+import net.benmann.orm8.db.DbException;
+import net.benmann.orm8.db.Group;
+import net.benmann.orm8.db.IQuery;
+import net.benmann.orm8.db.KeyLoader;
 import net.benmann.orm8.db.KeyType;
 import net.benmann.orm8.db.ORM8Results;
 import net.benmann.orm8.db.OrderImpl.Order;
+import net.benmann.orm8.db.Page;
+import net.benmann.orm8.db.QueryStats;
+import net.benmann.orm8.db.SelectedColumns;
 import net.benmann.orm8.db.SingleQuery;
+import net.benmann.orm8.db.Transaction;
+import net.benmann.orm8.db.WriteQueue;
 
 public class NoQLTest {
     static final String filename = "./test.db";
@@ -256,6 +284,96 @@ public class NoQLTest {
         assertFalse(sprockets.isValid());
     }
 
+    @Test public void testStreamRecords() {
+        testInsertRecords();
+
+        assertEquals(6, db.sprockets.all().fetchSize(2).stream().mapToInt(t -> t.id.get()).sum());
+
+        try (Stream<Sprocket> sprockets = db.sprockets.all().order(t -> Order.desc(t.id)).stream()) {
+            assertEquals("bingo@test.com", sprockets.findFirst().get().email.get());
+        }
+
+        List<String> emails = new ArrayList<>();
+        db.sprockets.where(t -> t.id.greaterThan(1)).forEach(t -> emails.add(t.email.get()));
+        assertEquals(2, emails.size());
+
+        int count = 0;
+        for (Sprocket sprocket : db.sprockets.all().select()) {
+            assertNotNull(sprocket.id.get());
+            count++;
+        }
+        assertEquals(3, count);
+    }
+
+    @Test public void testScanRecords() {
+        testInsertRecords();
+
+        List<Sprocket> seen = new ArrayList<>();
+        List<String> emails = new ArrayList<>();
+        db.sprockets.all().order(t -> Order.asc(t.id)).scan(t -> {
+            if (!seen.contains(t))
+                seen.add(t);
+            emails.add(t.email.get());
+        });
+        assertEquals(1, seen.size());
+        assertEquals(Arrays.asList("bob@test.com", "betty@test.com", "bingo@test.com"), emails);
+    }
+
+    @Test public void testPooledConnection() throws Exception {
+        File file = new File(testDirectory, "pooled.db");
+        try (MyDbConnection pooled = MyDbConnection.create("jdbc:sqlite:" + file.getAbsolutePath(), 2)) {
+            assertTrue(pooled.isPooled());
+            assertEquals(0, pooled.sprockets.count());
+
+            //Readers see committed writes.
+            for (int i = 1; i <= 4; i++) {
+                Sprocket sprocket = pooled.sprockets.create();
+                sprocket.email.set(i == 1 ? "bob@test.com" : "user" + i + "@test.com");
+                sprocket.insert();
+                assertEquals(i, pooled.sprockets.count());
+                assertEquals(Integer.valueOf(i), pooled.sprockets.all().max(t -> t.id));
+            }
+            pooled.sprockets.where(t -> t.id.greaterThan(1)).delete();
+            assertEquals(1, pooled.sprockets.count());
+
+            ORM8Results<Sprocket> a = pooled.sprockets.all().select();
+            ORM8Results<Sprocket> b = pooled.sprockets.all().select();
+            ORM8Results<Sprocket> c = pooled.sprockets.all().select();
+            assertEquals("bob@test.com", a.get().email.get());
+            assertEquals("bob@test.com", b.get().email.get());
+            assertEquals("bob@test.com", c.get().email.get());
+            a.close();
+            b.close();
+            c.close();
+
+            //Reads within a transaction see its uncommitted writes.
+            pooled.withTransaction(() -> {
+                pooled.sprockets.all().delete();
+                assertEquals(0, pooled.sprockets.count());
+                //Other threads still read committed rows, from the readers.
+                assertEquals(Integer.valueOf(1), pooled.async(() -> pooled.sprockets.count()).join());
+                return Transaction.ROLLBACK;
+            });
+            assertEquals(1, pooled.sprockets.count());
+            assertEquals("bob@test.com", pooled.sprockets.where(t -> t.id.is(1)).first().select().get().email.get());
+
+            //With every reader busy, a read falls back to the writer, and holds off other threads' writes until it's closed.
+            try (ORM8Results<Sprocket> busy1 = pooled.sprockets.all().select();
+                    ORM8Results<Sprocket> busy2 = pooled.sprockets.all().select()) {
+                ORM8Results<Sprocket> onWriter = pooled.sprockets.all().select();
+                CompletableFuture<Integer> delete = pooled.async(() -> {
+                    pooled.sprockets.all().delete();
+                    return pooled.sprockets.count();
+                });
+                Thread.sleep(100);
+                assertFalse(delete.isDone());
+                assertTrue(busy1.isValid() && busy2.isValid() && onWriter.isValid());
+                onWriter.close();
+                assertEquals(Integer.valueOf(0), delete.get(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
     @Test public void testUpdateRecord() {
         testInsertRecords();
 
@@ -304,6 +422,842 @@ public class NoQLTest {
         assertEquals(2, db.sprockets.count());
     }
 
+    /**
+     * Repeated statements come from the statement cache; two open result sets for the same SQL must not share one.
+     */
+    @Test public void testStatementReuse() {
+        for (int i = 0; i < 100; i++) {
+            Sprocket sprocket = db.sprockets.create();
+            sprocket.email.set("user" + i + "@test.com");
+            sprocket.insert();
+            assertEquals((Integer) (i + 1), sprocket.id.get());
+        }
+        assertEquals(100, db.sprockets.count());
+
+        ORM8Results<Sprocket> outer = db.sprockets.all().order(t -> Order.asc(t.id)).select();
+        ORM8Results<Sprocket> inner = db.sprockets.all().order(t -> Order.asc(t.id)).select();
+        assertEquals((Integer) 1, outer.get().id.get());
+        assertEquals((Integer) 1, inner.get().id.get());
+        assertEquals((Integer) 2, inner.get().id.get());
+        assertEquals((Integer) 2, outer.get().id.get());
+        outer.close();
+        inner.close();
+
+        assertEquals((Integer) 1, db.sprockets.all().order(t -> Order.asc(t.id)).select().get().id.get());
+    }
+
+    /** A compiled query builds its SQL once, and binds new values each time it's run. */
+    @Test public void testCompiledQuery() {
+        testInsertRecords();
+
+        CompiledQuery<Sprocket> byId = db.sprockets.prepareQuery((t, p) -> t.id.is(p.get(0)));
+        assertEquals(1, byId.getParameterCount());
+        assertEquals("bob@test.com", byId.select(1).get().email.get());
+        assertEquals("betty@test.com", byId.select(2).get().email.get());
+        assertNull(byId.select(4).get());
+
+        CompiledQuery<Sprocket> range = db.sprockets.where((t, p) -> t.id.gt(p.get(0)).and(t.email.like(p.get(1)))).order(t -> Order.desc(t.id)).compile();
+        assertEquals(Arrays.asList(3, 2), range.stream(1, "b%").map(r -> r.id.get()).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(2), range.stream(1, "be%").map(r -> r.id.get()).collect(Collectors.toList()));
+
+        try {
+            byId.select();
+            fail("Expected a parameter count error");
+        } catch (DbException e) {
+        }
+
+        try {
+            byId.select("1");
+            fail("Expected a parameter type error");
+        } catch (DbException e) {
+        }
+
+        try {
+            db.sprockets.where((t, p) -> t.id.is(p.get(0))).select();
+            fail("Expected an unbound parameter error");
+        } catch (DbException e) {
+        }
+    }
+
+    /** Selects by key come from the table's cache once read, until the row is written. */
+    @Test public void testRecordCache() {
+        testInsertRecords();
+        db.sprockets.enableCache(100, 0, TimeUnit.SECONDS);
+        CompiledQuery<Sprocket> byId = db.sprockets.prepareQuery((t, p) -> t.id.is(p.get(0)));
+
+        assertEquals("bob@test.com", db.sprockets.where(t -> t.id.is(1)).select().get().email.get());
+        assertEquals(0, db.sprockets.getCacheHits());
+        Sprocket bob = db.sprockets.where(t -> t.id.is(1)).first().select().get();
+        assertEquals(1, db.sprockets.getCacheHits());
+        assertEquals("bob@test.com", byId.select(1).get().email.get());
+        assertEquals(2, db.sprockets.getCacheHits());
+
+        //Changing a cached record doesn't change the cache; updating it does.
+        bob.email.set("robert@test.com");
+        assertEquals("bob@test.com", byId.select(1).get().email.get());
+        bob.update();
+        assertEquals("robert@test.com", byId.select(1).get().email.get());
+        assertEquals("robert@test.com", byId.select(1).get().email.get());
+
+        //Other filters always query the db.
+        long misses = db.sprockets.getCacheMisses();
+        assertEquals(0, db.sprockets.where(t -> t.id.is(1).and(t.email.is("bob@test.com"))).stream().count());
+        assertEquals(misses, db.sprockets.getCacheMisses());
+
+        bob.delete();
+        assertNull(byId.select(1).get());
+
+        //Selects fill the cache; deleting by query empties it.
+        assertEquals(2, db.sprockets.all().select().stream().count());
+        long hits = db.sprockets.getCacheHits();
+        assertEquals("betty@test.com", byId.select(2).get().email.get());
+        assertEquals(hits + 1, db.sprockets.getCacheHits());
+        db.sprockets.where(t -> t.id.is(2)).delete();
+        assertNull(byId.select(2).get());
+
+        //A rolled back write doesn't leave the cache stale.
+        assertEquals("bingo@test.com", byId.select(3).get().email.get());
+        db.withTransaction(() -> {
+            Sprocket bingo = byId.select(3).get();
+            bingo.email.set("bongo@test.com");
+            bingo.update();
+            assertEquals("bongo@test.com", byId.select(3).get().email.get());
+            return Transaction.ROLLBACK;
+        });
+        assertEquals("bingo@test.com", byId.select(3).get().email.get());
+
+        //Expired rows are read again.
+        db.sprockets.enableCache(100, 1, TimeUnit.NANOSECONDS);
+        byId.select(3).get();
+        byId.select(3).get();
+        assertEquals(0, db.sprockets.getCacheHits());
+        assertEquals(2, db.sprockets.getCacheMisses());
+        db.sprockets.disableCache();
+    }
+
+    /** IN lists longer than SQLite's parameter limit are split between statements. */
+    @Test public void testInAndGetAll() {
+        db.sprockets.insertAll(IntStream.rangeClosed(1, 2500).mapToObj(i -> {
+            Sprocket sprocket = db.sprockets.create();
+            sprocket.email.set("user" + i + "@test.com");
+            return sprocket;
+        }));
+
+        assertEquals(Arrays.asList(2, 3), db.sprockets.where(t -> t.id.in(Arrays.asList(3, 2, 2, null))).order(t -> Order.asc(t.id)).stream().map(r -> r.id.get()).collect(Collectors.toList()));
+        assertEquals(0, db.sprockets.where(t -> t.id.in(new ArrayList<>())).count());
+
+        List<Integer> ids = IntStream.rangeClosed(1, 2000).boxed().collect(Collectors.toList());
+        assertEquals(2000, db.sprockets.where(t -> t.id.in(ids)).count());
+        assertEquals(2000, db.sprockets.where(t -> t.id.in(ids)).stream().count());
+        assertEquals(1000, db.sprockets.where(t -> t.id.in(ids).and(t.id.gt(1000))).count());
+        try {
+            db.sprockets.where(t -> t.id.in(ids)).order(t -> Order.asc(t.id)).select();
+            fail("Expected a DbException for an ordered, split query");
+        } catch (DbException e) {
+        }
+
+        assertEquals(Integer.valueOf(1), db.sprockets.where(t -> t.id.in(ids)).min(t -> t.id));
+        assertEquals(Integer.valueOf(2000), db.sprockets.where(t -> t.id.in(ids)).max(t -> t.id));
+        assertEquals("user9@test.com", db.sprockets.where(t -> t.id.in(ids)).max(t -> t.email));
+        assertEquals(1, db.sprockets.where(t -> t.id.in(ids)).minInt(t -> t.id).getAsInt());
+        assertEquals(2000, db.sprockets.where(t -> t.id.in(ids)).maxInt(t -> t.id).getAsInt());
+        assertEquals(2001000L, db.sprockets.where(t -> t.id.in(ids)).sumLong(t -> t.id));
+        assertEquals(2001000.0, db.sprockets.where(t -> t.id.in(ids)).sumDouble(t -> t.id), 0.0);
+        try (ORM8Results<Sprocket> emails = db.sprockets.where(t -> t.id.in(ids)).select(t -> t.only(t.email))) {
+            int count = 0;
+            for (Sprocket sprocket : emails) {
+                assertTrue(sprocket.email.get().startsWith("user"));
+                count++;
+            }
+            assertEquals(2000, count);
+        }
+        try {
+            db.sprockets.where(t -> t.id.in(ids)).compile();
+            fail("Expected a DbException for compiling a split query");
+        } catch (DbException e) {
+        }
+
+        List<Integer> keys = new ArrayList<>(ids);
+        keys.add(9999);
+        Map<Integer, Sprocket> sprockets = db.sprockets.getAll(keys);
+        assertEquals(2000, sprockets.size());
+        assertEquals("user1234@test.com", sprockets.get(1234).email.get());
+        assertNull(sprockets.get(9999));
+
+        db.sprockets.enableCache(5000, 0, TimeUnit.SECONDS);
+        db.sprockets.getAll(keys);
+        assertEquals(2000, db.sprockets.getAll(keys).size());
+        assertEquals(2000, db.sprockets.getCacheHits());
+        db.sprockets.disableCache();
+
+        db.sprockets.where(t -> t.id.in(ids)).delete();
+        assertEquals(500, db.sprockets.count());
+    }
+
+    private Gadget gadget(int owner, String code, int count) {
+        Gadget gadget = db.gadgets.create();
+        gadget.owner.set(owner);
+        gadget.code.set(code);
+        gadget.count.set(count);
+        return gadget;
+    }
+
+    /** insertOrUpdate inserts a record whose key isn't in the table, and otherwise updates its dirty columns. */
+    @Test public void testUpsert() {
+        Gadget first = gadget(1, "a", 1);
+        first.label.set("first");
+        first.insertOrUpdate();
+        gadget(1, "a", 2).insertOrUpdate();
+        gadget(2, "a", 3).insertOrUpdate();
+
+        assertEquals(2, db.gadgets.count());
+        Gadget a = db.gadgets.where(t -> t.owner.is(1).and(t.code.is("a"))).select().get();
+        assertEquals(Integer.valueOf(2), a.count.get());
+        assertEquals("first", a.label.get()); //Not dirty, so not changed.
+
+        Gadget key = db.gadgets.create();
+        key.owner.set(3);
+        key.code.set("b");
+        key.count.set(0);
+        key.insertOrUpdate();
+        key.insertOrUpdate();
+        assertEquals(3, db.gadgets.count());
+
+        db.gadgets.upsertAll(IntStream.rangeClosed(1, 4).mapToObj(i -> gadget(i, "a", 10 + i)).collect(Collectors.toList()));
+        assertEquals(5, db.gadgets.count());
+        assertEquals(Integer.valueOf(10 + 1 + 10 + 2 + 10 + 3 + 10 + 4), db.gadgets.where(t -> t.code.is("a")).stream().map(g -> g.count.get()).reduce(0, Integer::sum));
+
+        Sprocket sprocket = db.sprockets.create();
+        sprocket.email.set("new@test.com");
+        sprocket.insertOrUpdate();
+        sprocket.email.set("changed@test.com");
+        sprocket.insertOrUpdate();
+        assertEquals(1, db.sprockets.count());
+        assertEquals("changed@test.com", db.sprockets.all().select().get().email.get());
+    }
+
+    /** Increments happen in the db; a VERSION column makes update() fail if the row changed since it was read. */
+    @Test public void testIncrementAndVersion() {
+        Gadget gadget = gadget(1, "a", 0);
+        gadget.insert();
+        assertEquals(Integer.valueOf(1), gadget.version.get());
+
+        IntStream.range(0, 100).parallel().forEach(i -> assertTrue(gadget.copyKey().count.increment(1)));
+        assertTrue(gadget.count.increment(5));
+        assertEquals(Integer.valueOf(5), gadget.count.get()); //Only the record's own increments.
+        assertEquals(Integer.valueOf(2), gadget.version.get());
+        assertFalse(gadget(9, "z", 0).count.increment(1));
+
+        assertEquals(1, db.gadgets.all().update(t -> t.count.add(10)));
+        Gadget read = db.gadgets.where(t -> t.owner.is(1).and(t.code.is("a"))).select().get();
+        assertEquals(Integer.valueOf(115), read.count.get());
+        assertEquals(Integer.valueOf(103), read.version.get());
+
+        gadget.label.set("stale");
+        assertFalse(gadget.update());
+        assertTrue(gadget.label.isDirty());
+
+        read.label.set("fresh");
+        assertTrue(read.update());
+        assertEquals(Integer.valueOf(104), read.version.get());
+        assertEquals("fresh", db.gadgets.where(t -> t.owner.is(1)).select().get().label.get());
+
+        //insertOrUpdate of an existing row moves its version on too, so stale records can't overwrite it.
+        Gadget stale = db.gadgets.where(t -> t.owner.is(1)).select().get();
+        Gadget upsert = gadget(1, "a", 7);
+        upsert.insertOrUpdate();
+        assertEquals(Integer.valueOf(105), upsert.version.get());
+        stale.count.set(1);
+        assertFalse(stale.update());
+        upsert.count.set(8);
+        assertTrue(upsert.update());
+        assertEquals(Integer.valueOf(8), db.gadgets.where(t -> t.owner.is(1)).select().get().count.get());
+
+        //A NULL counter counts from 0.
+        assertNull(upsert.hits.get());
+        assertTrue(upsert.hits.increment(3));
+        assertEquals(Long.valueOf(3), upsert.hits.get());
+        assertEquals(1, db.gadgets.all().update(t -> t.hits.add(2)));
+        assertEquals(1, db.gadgets.where(t -> t.hits.is(5L)).count());
+        assertEquals(1, db.gadgets.all().update(t -> t.hits.setTo(null).and(t.count.add(1))));
+        assertEquals(1, db.gadgets.all().update(t -> t.hits.add(4)));
+        assertEquals(Long.valueOf(4), db.gadgets.where(t -> t.owner.is(1)).select().get().hits.get());
+    }
+
+    /** Pages follow each other by seeking past the last record's order values; ties are broken by key. */
+    @Test public void testPaging() {
+        db.widgets.insertAll(IntStream.rangeClosed(1, 50).mapToObj(i -> {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i % 4);
+            return widget;
+        }));
+
+        List<Integer> expected = db.widgets.all().order(t -> Order.desc(t.xtable).asc(t.id)).stream().map(r -> r.id.get()).collect(Collectors.toList());
+        List<Integer> paged = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            Page<Widget> page = db.widgets.where(t -> t.id.gt(0)).order(t -> Order.desc(t.xtable)).page(token, 7);
+            page.forEach(r -> paged.add(r.id.get()));
+            token = page.getNext();
+            pages++;
+        } while (token != null);
+        assertEquals(expected, paged);
+        assertEquals(8, pages);
+
+        Widget tenth = db.widgets.where(t -> t.id.is(10)).select().get();
+        assertEquals(Arrays.asList(11, 12, 13), db.widgets.all().after(tenth).first(3).stream().map(r -> r.id.get()).collect(Collectors.toList()));
+        assertEquals(40, db.widgets.all().after(tenth).count());
+
+        try {
+            db.widgets.all().page("not a token", 5);
+            fail("Expected a DbException for an invalid token");
+        } catch (DbException e) {
+        }
+
+        //A token from a query ordered by another column type holds the wrong types of values
+        String byXtable = db.widgets.all().order(t -> Order.asc(t.xtable)).page(null, 5).getNext();
+        try {
+            db.widgets.all().order(t -> Order.asc(t.name)).page(byXtable, 5);
+            fail("Expected a DbException for a token of another query");
+        } catch (DbException e) {
+            assertTrue(e.getMessage().startsWith("Invalid page token"));
+        }
+    }
+
+    /** Repeated counts, aggregates and short selects come from the result cache until a table they read is written. */
+    @Test public void testResultCache() {
+        db.widgets.insertAll(IntStream.rangeClosed(1, 20).mapToObj(i -> {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i % 4);
+            widget.name.set("w" + i);
+            return widget;
+        }));
+        db.enableResultCache(100, 10);
+
+        assertEquals(5, db.widgets.where(t -> t.xtable.is(1)).count());
+        assertEquals(5, db.widgets.where(t -> t.xtable.is(1)).count());
+        assertEquals(1, db.getResultCacheHits());
+        assertEquals(Integer.valueOf(20), db.widgets.all().max(t -> t.id));
+        assertEquals(Integer.valueOf(20), db.widgets.all().max(t -> t.id));
+        assertEquals(2, db.getResultCacheHits());
+
+        Widget first = db.widgets.all().order(t -> Order.asc(t.id)).first(3).select().get();
+        first.name.set("changed");
+        assertEquals("w1", db.widgets.all().order(t -> Order.asc(t.id)).first(3).select().get().name.get());
+        assertEquals(3, db.getResultCacheHits());
+
+        first.update();
+        assertEquals("changed", db.widgets.all().order(t -> Order.asc(t.id)).first(3).select().get().name.get());
+        assertEquals(3, db.getResultCacheHits());
+
+        Widget widget = db.widgets.create();
+        widget.xtable.set(1);
+        widget.insert();
+        assertEquals(6, db.widgets.where(t -> t.xtable.is(1)).count());
+        db.widgets.where(t -> t.xtable.is(1)).delete();
+        assertEquals(0, db.widgets.where(t -> t.xtable.is(1)).count());
+        assertEquals(Integer.valueOf(20), db.widgets.all().max(t -> t.id));
+
+        try (Transaction transaction = db.createTransaction()) {
+            db.widgets.all().delete();
+            assertEquals(0, db.widgets.all().count());
+            transaction.rollback();
+        }
+        assertEquals(15, db.widgets.all().count());
+        assertEquals(3, db.getResultCacheHits());
+    }
+
+    /** exists and countUpTo stop reading once they have their answer. */
+    @Test public void testExistsAndCountUpTo() {
+        assertFalse(db.widgets.all().exists());
+        assertEquals(0, db.widgets.all().countUpTo(10));
+
+        db.widgets.insertAll(IntStream.rangeClosed(1, 30).mapToObj(i -> {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i % 3);
+            return widget;
+        }));
+        assertTrue(db.widgets.where(t -> t.xtable.is(2)).exists());
+        assertFalse(db.widgets.where(t -> t.xtable.is(3)).exists());
+        assertEquals(5, db.widgets.where(t -> t.xtable.is(1)).countUpTo(5));
+        assertEquals(10, db.widgets.where(t -> t.xtable.is(1)).countUpTo(50));
+        assertEquals(0, db.widgets.all().countUpTo(0));
+
+        List<Integer> ids = IntStream.rangeClosed(1, 2000).boxed().collect(Collectors.toList());
+        assertEquals(25, db.widgets.where(t -> t.id.in(ids)).countUpTo(25));
+        assertTrue(db.widgets.where(t -> t.id.in(ids)).exists());
+    }
+
+    /**
+     * Each result set matches its columns to the record's once, and keeps that for its later rows; result sets with
+     * different projections don't share it, even when they're read in turn.
+     */
+    @Test public void testColumnIndexes() {
+        db.widgets.insertAll(IntStream.rangeClosed(1, 10).mapToObj(i -> {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i * 10);
+            widget.name.set(i % 2 == 0 ? "w" + i : null);
+            return widget;
+        }));
+
+        try (ORM8Results<Widget> full = db.widgets.all().order(t -> Order.asc(t.id)).select();
+                ORM8Results<Widget> names = db.widgets.all().order(t -> Order.asc(t.id)).select(t -> t.only(t.name, t.id))) {
+            for (int i = 1; i <= 10; i++) {
+                Widget widget = full.get();
+                assertEquals(Integer.valueOf(i), widget.id.get());
+                assertEquals(Integer.valueOf(i * 10), widget.xtable.get());
+                assertEquals(i % 2 == 0 ? "w" + i : null, widget.name.get());
+
+                Widget named = names.get();
+                assertEquals(Integer.valueOf(i), named.id.get());
+                assertNull(named.xtable.get());
+                assertEquals(i % 2 == 0 ? "w" + i : null, named.name.get());
+            }
+            assertFalse(full.isValid());
+            assertFalse(names.isValid());
+        }
+
+        List<Integer> xtables = new ArrayList<>();
+        db.widgets.where(t -> t.id.greaterThan(5)).order(t -> Order.asc(t.id)).scan(t -> xtables.add(t.xtable.get()));
+        assertEquals(Arrays.asList(60, 70, 80, 90, 100), xtables);
+    }
+
+    /** groupBy computes several aggregates per group in one statement, each read as its own type. */
+    @Test public void testGroupBy() {
+        db.widgets.insertAll(IntStream.rangeClosed(1, 12).mapToObj(i -> {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i % 3);
+            widget.name.set(i % 2 == 0 ? "w" + i : null);
+            return widget;
+        }));
+
+        List<Group<Widget>> groups = db.widgets.where(t -> t.id.lessThan(12)).order(t -> Order.desc(t.xtable)).groupBy(t -> t.xtable)
+                .aggregate(t -> Aggregate.count(), t -> Aggregate.count(t.name), t -> Aggregate.sum(t.id), t -> Aggregate.max(t.id), t -> Aggregate.min(t.name), t -> Aggregate.avg(t.id));
+        assertEquals(3, groups.size());
+        Group<Widget> two = groups.get(0);
+        Integer key = two.get(t -> t.xtable);
+        assertEquals(Integer.valueOf(2), key);
+        assertEquals(4, two.count()); //2, 5, 8, 11
+        assertEquals(2, two.count(t -> t.name));
+        Integer sum = two.sum(t -> t.id);
+        assertEquals(Integer.valueOf(26), sum);
+        Integer max = two.max(t -> t.id);
+        assertEquals(Integer.valueOf(11), max);
+        String min = two.min(t -> t.name);
+        assertEquals("w2", min);
+        assertEquals(6.5, two.avg(t -> t.id), 0);
+        assertEquals(Integer.valueOf(0), groups.get(2).get(t -> t.xtable));
+
+        IQuery<Widget> query = db.widgets.all();
+        assertEquals(3, query.groupBy(t -> t.xtable).aggregate(t -> Aggregate.count()).size());
+
+        Group<Widget> all = db.widgets.all().aggregate(t -> Aggregate.count(), t -> Aggregate.max(t.id));
+        assertEquals(12, all.count());
+        assertEquals(Integer.valueOf(12), all.max(t -> t.id));
+        assertEquals(Integer.valueOf(1), db.widgets.all().min(t -> t.id));
+        assertNull(db.widgets.where(t -> t.id.is(100)).aggregate(t -> Aggregate.sum(t.id)).sum(t -> t.id));
+
+        try {
+            all.sum(t -> t.id);
+            fail("Expected a DbException for an aggregate which wasn't computed");
+        } catch (DbException e) {
+        }
+    }
+
+    /** Numeric columns and aggregates can be read as primitives, without a record or a box per row. */
+    @Test public void testPrimitiveResults() {
+        assertFalse(db.widgets.all().maxInt(t -> t.id).isPresent());
+        assertEquals(0, db.widgets.all().sumLong(t -> t.id));
+
+        db.widgets.insertAll(IntStream.rangeClosed(1, 1200).mapToObj(i -> {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i % 10);
+            return widget;
+        }));
+
+        assertArrayEquals(new int[] { 9, 19, 29 }, db.widgets.all().order(t -> Order.desc(t.xtable).asc(t.id)).first(3).selectInts(t -> t.id));
+        assertEquals(120, db.widgets.where(t -> t.xtable.is(3)).selectInts(t -> t.id).length);
+        assertEquals(1, db.widgets.all().minInt(t -> t.id).getAsInt());
+        assertEquals(1200, db.widgets.all().maxInt(t -> t.id).getAsInt());
+        assertEquals(1200 * 1201 / 2, db.widgets.all().sumLong(t -> t.id));
+        assertEquals(5400.0, db.widgets.all().sumDouble(t -> t.xtable), 0);
+
+        List<Integer> ids = IntStream.rangeClosed(1, 1100).boxed().collect(Collectors.toList());
+        int[] selected = db.widgets.where(t -> t.id.in(ids)).selectInts(t -> t.id);
+        Arrays.sort(selected);
+        assertArrayEquals(IntStream.rangeClosed(1, 1100).toArray(), selected);
+    }
+
+    /** selectColumnar reads the selected columns in batches of primitive arrays and dictionary coded strings. */
+    @Test public void testColumnar() {
+        db.widgets.insertAll(IntStream.rangeClosed(1, 25).mapToObj(i -> {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i * 2);
+            widget.name.set(i % 5 == 0 ? null : "n" + i % 3);
+            return widget;
+        }));
+
+        List<Integer> sizes = new ArrayList<>();
+        long total = 0;
+        Set<String> names = new HashSet<>();
+        int nulls = 0;
+        try (ColumnarResults<Widget> batches = db.widgets.all().order(t -> Order.asc(t.id)).selectColumnar(t -> new SelectedColumns(t.xtable, t.name), 10)) {
+            for (ColumnBatch<Widget> batch : batches) {
+                sizes.add(batch.size());
+                int[] xs = batch.getInts(t -> t.xtable).getValues();
+                for (int row = 0; row < batch.size(); row++) {
+                    total += xs[row];
+                }
+                StringVector strings = batch.getStrings(t -> t.name);
+                assertEquals(3, strings.getDictionary().size());
+                for (int row = 0; row < batch.size(); row++) {
+                    if (strings.isNull(row)) {
+                        assertEquals(-1, strings.getCodes()[row]);
+                        nulls++;
+                    } else {
+                        names.add(strings.get(row));
+                    }
+                }
+                try {
+                    batch.getInts(t -> t.id);
+                    fail("Expected a DbException for a column which wasn't selected");
+                } catch (DbException e) {
+                }
+            }
+            assertFalse(batches.isValid());
+            assertNull(batches.get());
+        }
+        assertEquals(Arrays.asList(10, 10, 5), sizes);
+        assertEquals(25 * 26, total);
+        assertEquals(new HashSet<>(Arrays.asList("n0", "n1", "n2")), names);
+        assertEquals(5, nulls);
+    }
+
+    /** Query.update sets columns of every matching row with one statement. */
+    @Test public void testBulkUpdate() {
+        db.widgets.insertAll(IntStream.rangeClosed(1, 1500).mapToObj(i -> {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i % 3);
+            widget.name.set("w" + i);
+            return widget;
+        }));
+        db.widgets.enableCache(100, 0, TimeUnit.SECONDS);
+        assertEquals("w1", db.widgets.where(t -> t.id.is(1)).select().get().name.get());
+
+        assertEquals(500, db.widgets.where(t -> t.xtable.is(1)).update(t -> t.xtable.setTo(7).and(t.name.setTo(null))));
+        assertEquals(500, db.widgets.where(t -> t.xtable.is(7).and(t.name.isNull())).count());
+        assertNull(db.widgets.where(t -> t.id.is(1)).select().get().name.get());
+
+        List<Integer> ids = IntStream.rangeClosed(1, 1200).boxed().collect(Collectors.toList());
+        assertEquals(1200, db.widgets.where(t -> t.id.in(ids)).update(t -> t.name.setTo("bulk")));
+        assertEquals(1200, db.widgets.where(t -> t.name.is("bulk")).count());
+
+        try {
+            db.widgets.all().update(t -> t.id.setTo(1));
+            fail("Expected a DbException for a key column update");
+        } catch (DbException e) {
+        }
+        db.widgets.disableCache();
+    }
+
+    /** Async queries run on the connection's executor, and can be combined. */
+    @Test public void testAsync() throws Exception {
+        List<CompletableFuture<Void>> inserts = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            Sprocket sprocket = db.sprockets.create();
+            sprocket.email.set("user" + i + "@test.com");
+            inserts.add(sprocket.insertAsync());
+        }
+        CompletableFuture.allOf(inserts.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+        CompletableFuture<Integer> count = db.sprockets.where(t -> t.id.gt(5)).countAsync();
+        CompletableFuture<List<Sprocket>> first = db.sprockets.all().order(t -> Order.asc(t.id)).first(3).selectAsync();
+        assertEquals(Integer.valueOf(5), count.get(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2, 3), first.get(10, TimeUnit.SECONDS).stream().map(r -> r.id.get()).collect(Collectors.toList()));
+
+        AtomicInteger tasks = new AtomicInteger();
+        db.setAsyncExecutor(task -> {
+            tasks.incrementAndGet();
+            task.run();
+        });
+        db.sprockets.where(t -> t.id.lte(5)).deleteAsync().get();
+        assertEquals(Integer.valueOf(5), db.sprockets.all().countAsync().get());
+        assertEquals(2, tasks.get());
+        db.setAsyncExecutor(null);
+    }
+
+    /** Writes queued from many threads are committed together; a failed write only fails its own future. */
+    @Test public void testWriteQueue() throws Exception {
+        List<CompletableFuture<Void>> inserts;
+        CompletableFuture<Void> duplicate;
+        try (WriteQueue writes = db.writeQueue(100, 5, TimeUnit.MILLISECONDS)) {
+            inserts = IntStream.rangeClosed(1, 200).parallel().mapToObj(i -> {
+                Sprocket sprocket = db.sprockets.create();
+                sprocket.email.set("user" + i + "@test.com");
+                return writes.insert(sprocket);
+            }).collect(Collectors.toList());
+            CompletableFuture.allOf(inserts.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+            Sprocket copy = db.sprockets.create();
+            copy.id.set(1);
+            duplicate = writes.insert(copy);
+            Sprocket sprocket = db.sprockets.create();
+            sprocket.email.set("last@test.com");
+            inserts.add(writes.insert(sprocket));
+        }
+
+        assertTrue(duplicate.isCompletedExceptionally());
+        assertTrue(inserts.get(200).isDone() && !inserts.get(200).isCompletedExceptionally());
+        assertEquals(201, db.sprockets.count());
+    }
+
+    /** A queued update reports a VERSION conflict, and nothing can be queued once the queue is closed. */
+    @Test public void testWriteQueueUpdate() throws Exception {
+        Gadget gadget = gadget(1, "a", 8);
+        gadget.insert();
+        Gadget stale = db.gadgets.where(t -> t.owner.is(1)).select().get();
+        gadget.count.set(9);
+        assertTrue(gadget.update());
+
+        WriteQueue writes = db.writeQueue(10, 0, TimeUnit.MILLISECONDS);
+        stale.count.set(10);
+        assertFalse(writes.update(stale).get(10, TimeUnit.SECONDS));
+        gadget.count.set(11);
+        assertTrue(writes.update(gadget).get(10, TimeUnit.SECONDS));
+        writes.close();
+        assertEquals(Integer.valueOf(11), db.gadgets.where(t -> t.owner.is(1)).select().get().count.get());
+
+        try {
+            writes.update(gadget);
+            fail("Expected an IllegalStateException once the queue is closed");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    /** Loads gathered by a KeyLoader share one select per batch. */
+    @Test public void testKeyLoader() throws Exception {
+        db.sprockets.insertAll(IntStream.rangeClosed(1, 100).mapToObj(i -> {
+            Sprocket sprocket = db.sprockets.create();
+            sprocket.email.set("user" + i + "@test.com");
+            return sprocket;
+        }));
+
+        QueryStats stats = new QueryStats();
+        db.addListener(stats);
+        try (KeyLoader<Integer, Sprocket> loader = db.sprockets.loader(50, 1, TimeUnit.MINUTES)) {
+            List<CompletableFuture<Sprocket>> futures = IntStream.rangeClosed(1, 100).parallel().mapToObj(loader::load).collect(Collectors.toList());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("user" + (i + 1) + "@test.com", futures.get(i).get(10, TimeUnit.SECONDS).email.get());
+            }
+        } finally {
+            db.removeListener(stats);
+        }
+        assertEquals(2, stats.byTable().get("tables").getCount());
+
+        try (KeyLoader<Integer, Sprocket> loader = db.sprockets.loader(50, 10, TimeUnit.MILLISECONDS)) {
+            CompletableFuture<Sprocket> first = loader.load(7);
+            assertTrue(first == loader.load(7));
+            assertNull(loader.load(9999).get(10, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(7), first.get().id.get());
+        }
+    }
+
+    /** Listeners see every statement; QueryStats groups them by table and by shape. */
+    @Test public void testQueryStats() {
+        QueryStats stats = new QueryStats();
+        db.addListener(stats);
+        try {
+            for (int i = 0; i < 10; i++) {
+                Sprocket sprocket = db.sprockets.create();
+                sprocket.email.set("user" + i + "@test.com");
+                sprocket.insert();
+            }
+            assertEquals(10, db.sprockets.count());
+            assertEquals(10, db.sprockets.all().select().stream().count());
+        } finally {
+            db.removeListener(stats);
+        }
+
+        QueryStats.Stats table = stats.byTable().get("tables");
+        assertNotNull(table);
+        assertEquals(12, table.getCount());
+        assertTrue(table.getCacheHits() >= 9);
+        assertEquals(10 + 1 + 10, table.getRows());
+        assertTrue(table.getPercentileNanos(50) <= table.getPercentileNanos(99));
+        assertEquals(3, stats.byShape().size());
+        assertEquals(12, stats.hottest(10).stream().mapToLong(QueryStats.Stats::getCount).sum());
+    }
+
+    /** Each pattern of null columns gets its own cached insert statement. */
+    @Test public void testInsertNullableColumns() {
+        String[] names = { null, "box", null, "bar" };
+        for (int i = 0; i < names.length; i++) {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i);
+            widget.name.set(names[i]);
+            widget.insert();
+            assertEquals((Integer) (i + 1), widget.id.get());
+        }
+
+        ORM8Results<Widget> widgets = db.widgets.all().order(t -> Order.asc(t.id)).select();
+        for (int i = 0; i < names.length; i++) {
+            Widget widget = widgets.get();
+            assertEquals((Integer) i, widget.xtable.get());
+            assertEquals(names[i], widget.name.get());
+        }
+        assertFalse(widgets.isValid());
+
+        Widget widget = db.widgets.where(t -> t.id.is(2)).first().select().get();
+        widget.xtable.set(7);
+        widget.update();
+        widget.name.set("window");
+        widget.update();
+        widget = db.widgets.where(t -> t.id.is(2)).first().select().get();
+        assertEquals((Integer) 7, widget.xtable.get());
+        assertEquals("window", widget.name.get());
+    }
+
+    @Test public void testInsertAll() {
+        List<Widget> widgets = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i);
+            widget.name.set(i % 3 == 0 ? null : "widget" + i);
+            widgets.add(widget);
+        }
+        db.widgets.insertAll(widgets, 100);
+
+        assertEquals(250, db.widgets.count());
+        assertEquals(84, db.widgets.where(t -> t.name.isNull()).count());
+        for (int i = 0; i < widgets.size(); i++) {
+            assertEquals((Integer) (i + 1), widgets.get(i).id.get());
+        }
+
+        db.widgets.insertAll(IntStream.range(0, 10).mapToObj(i -> {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(i);
+            return widget;
+        }));
+        assertEquals(260, db.widgets.count());
+        assertEquals(Integer.valueOf(260), db.widgets.all().max(t -> t.id));
+
+        //Runs with the same nulls share multi-row INSERTs (499 rows of 2 parameters), and get consecutive keys
+        //following on from deleted rows.
+        db.widgets.where(t -> t.id.greaterThan(255)).delete();
+        List<Widget> run = IntStream.range(0, 1500).mapToObj(i -> {
+            Widget widget = db.widgets.create();
+            widget.xtable.set(1000 + i);
+            widget.name.set("run" + i);
+            return widget;
+        }).collect(Collectors.toList());
+        QueryStats stats = new QueryStats();
+        db.addListener(stats);
+        try {
+            db.widgets.insertAll(run, 1000);
+        } finally {
+            db.removeListener(stats);
+        }
+        assertEquals(4, stats.byTable().get("widgets").getCount());
+        assertEquals(1500, stats.byTable().get("widgets").getRows());
+        assertEquals(IntStream.range(0, 1500).mapToObj(i -> 261 + i).collect(Collectors.toList()), run.stream().map(w -> w.id.get()).collect(Collectors.toList()));
+        assertEquals(run.stream().map(w -> w.xtable.get()).collect(Collectors.toList()),
+                db.widgets.where(t -> t.id.greaterThan(255)).order(t -> Order.asc(t.id)).stream().map(w -> w.xtable.get()).collect(Collectors.toList()));
+        assertFalse(run.get(0).xtable.isDirty());
+    }
+
+    @Test public void testTransactions() {
+        testInsertRecords();
+
+        try (Transaction t = db.createTransaction()) {
+            db.sprockets.where(t2 -> t2.id.is(1)).delete();
+            assertEquals(2, db.sprockets.count());
+            t.rollback();
+        }
+        assertEquals(3, db.sprockets.count());
+
+        db.withTransaction(Transaction.Mode.IMMEDIATE, () -> {
+            db.sprockets.where(t -> t.id.is(1)).delete();
+
+            //A nested transaction is a savepoint; rolling it back leaves the outer transaction's work alone.
+            db.withTransaction(() -> {
+                db.sprockets.where(t -> t.id.is(2)).delete();
+                assertEquals(1, db.sprockets.count());
+                return Transaction.ROLLBACK;
+            });
+            assertEquals(2, db.sprockets.count());
+            return Transaction.COMMIT;
+        });
+        assertEquals(2, db.sprockets.count());
+
+        try (Transaction t = db.createTransaction()) {
+            assertFalse(t.isNested());
+            db.sprockets.all().delete();
+            //Closing without commit or rollback rolls back, then complains.
+        } catch (IllegalStateException e) {
+        }
+        assertEquals(2, db.sprockets.count());
+    }
+
+    /** A transaction belongs to its thread: other threads' transactions and writes wait for it, rather than joining it. */
+    @Test public void testTransactionsPerThread() throws Exception {
+        Widget mine = db.widgets.create();
+        mine.xtable.set(1);
+        try (Transaction t = db.createTransaction()) {
+            mine.insert();
+
+            CompletableFuture<Boolean> nested = CompletableFuture.supplyAsync(() -> {
+                try (Transaction other = db.createTransaction()) {
+                    Widget theirs = db.widgets.create();
+                    theirs.xtable.set(2);
+                    theirs.insert();
+                    other.commit();
+                    return other.isNested();
+                }
+            });
+            CompletableFuture<Void> plain = CompletableFuture.runAsync(() -> {
+                Widget theirs = db.widgets.create();
+                theirs.xtable.set(3);
+                theirs.insert();
+            });
+            Thread.sleep(100);
+            assertFalse(nested.isDone());
+            assertFalse(plain.isDone());
+
+            t.rollback();
+            assertFalse(nested.get(5, TimeUnit.SECONDS));
+            plain.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList(2, 3), db.widgets.all().stream().map(w -> w.xtable.get()).sorted().collect(Collectors.toList()));
+    }
+
+    /** Without readers, other threads' reads wait for a transaction to end, and writes wait for open results to close. */
+    @Test public void testReadsOnWriter() throws Exception {
+        testInsertRecords();
+
+        try (Transaction t = db.createTransaction()) {
+            db.sprockets.all().delete();
+            CompletableFuture<Integer> count = CompletableFuture.supplyAsync(() -> db.sprockets.count());
+            Thread.sleep(100);
+            assertFalse(count.isDone());
+
+            t.rollback();
+            assertEquals(Integer.valueOf(3), count.get(5, TimeUnit.SECONDS));
+        }
+
+        CompletableFuture<Void> delete;
+        try (ORM8Results<Sprocket> results = db.sprockets.all().order(t -> Order.asc(t.id)).select()) {
+            assertEquals(Integer.valueOf(1), results.get().id.get());
+            delete = CompletableFuture.runAsync(() -> db.sprockets.where(t -> t.id.is(3)).delete());
+            Thread.sleep(100);
+            assertFalse(delete.isDone());
+            assertEquals(Integer.valueOf(2), results.get().id.get());
+            assertEquals(Integer.valueOf(3), results.get().id.get());
+        }
+        delete.get(5, TimeUnit.SECONDS);
+        assertEquals(2, db.sprockets.count());
+    }
+
     @Test public void testDeleteAll() {
         testInsertRecords();
 
@@ -346,6 +1300,7 @@ public class NoQLTest {
     static class MyDbConnection extends DbConnection<MyDbConnection> {
         final SprocketTable sprockets = new SprocketTable(this);
         final WidgetTable widgets = new WidgetTable(this);
+        final GadgetTable gadgets = new GadgetTable(this);
 
         /** Use create */
         private MyDbConnection() {
@@ -354,6 +1309,10 @@ public class NoQLTest {
         static public MyDbConnection create(String connectionString) {
             return DbConnection.create(connectionString, () -> new MyDbConnection());
         }
+
+        static public MyDbConnection create(String connectionString, int readers) {
+            return DbConnection.create(connectionString, readers, () -> new MyDbConnection());
+        }
     }
 
     public static class SprocketTable extends AbstractTable<SprocketTable, Sprocket, MyDbConnection> {
@@ -371,6 +1330,25 @@ public class NoQLTest {
         public StringColumn email = fields.stringColumn("email");
     }
 
+    public static class GadgetTable extends AbstractTable<GadgetTable, Gadget, MyDbConnection> {
+        public GadgetTable(MyDbConnection db) {
+            super(db, "gadgets", Gadget::new);
+        }
+    }
+
+    public static class Gadget extends AbstractSingleTableRecord<Gadget> {
+        protected Gadget(GadgetTable table) {
+            super(table);
+        }
+
+        public IntegerColumn owner = fields.integerColumn("owner", KeyType.KEY);
+        public StringColumn code = fields.stringColumn("code", KeyType.KEY);
+        public IntegerColumn count = fields.integerColumn("count");
+        public StringColumn label = fields.stringColumn("label", KeyType.NULLABLE);
+        public LongColumn hits = fields.longColumn("hits", KeyType.NULLABLE);
+        public IntegerColumn version = fields.integerColumn("version", KeyType.VERSION);
+    }
+
     public static class WidgetTable extends AbstractTable<WidgetTable, Widget, MyDbConnection> {
         public WidgetTable(MyDbConnection db) {
             super(db, "widgets", Widget::new);